@@ -1,41 +1,77 @@
 import java.nio.channels.SocketChannel;
 import java.nio.ByteBuffer;
 import java.io.IOException;
+import java.io.EOFException;
 
 
 public class ChannelReader
 {
+	/* default size of the reassembly buffer (header included) */
+	private static final int BUFFER_SIZE = 65536;
+	/* largest frame payload accepted by a default reader (e.g. by clients) */
+	public static final int MAX_PAYLOAD = BUFFER_SIZE - Frame.HEADER_SIZE;
+
 	/* socket channel to read from */
 	private SocketChannel channel;
+	/* reassembly buffer, holding data read but not decoded yet */
+	private ByteBuffer inBuffer;
 
 
 	/**
-	 * Instantiate a new channel reader.
+	 * Instantiate a new channel reader with its own reassembly buffer.
 	 * @param channel the channel to read from.
 	 */
 	public ChannelReader(SocketChannel channel)
+	{
+		this(channel, ByteBuffer.allocate(BUFFER_SIZE));
+	}
+
+	/**
+	 * Instantiate a new channel reader on an existing reassembly buffer.
+	 * @param channel the channel to read from.
+	 * @param inBuffer reassembly buffer (in write mode), possibly holding partial frames.
+	 */
+	public ChannelReader(SocketChannel channel, ByteBuffer inBuffer)
 	{
 		this.channel = channel;
+		this.inBuffer = inBuffer;
 	}
 
 	/**
-	 * Read raw data from the channel.
-	 * @return the read raw data in a byte array.
+	 * Read available raw data from the channel into the reassembly buffer.
+	 * @return the number of bytes read, possibly zero, or -1 if end-of-stream.
 	 * @throws IOException if an I/O error occurs.
 	 */
-	public byte[] read() throws IOException
+	public int read() throws IOException
+	{
+		return channel.read(inBuffer);
+	}
+
+	/**
+	 * Decode the next complete frame from the reassembly buffer.
+	 * @return the next frame, or null if no complete frame is available.
+	 * @throws IOException if a malformed frame is found.
+	 */
+	public Frame nextFrame() throws IOException
 	{
-		ByteBuffer inBuffer = ByteBuffer.allocate(1024);
-		int numBytes = channel.read(inBuffer);
-		
-		/* check if end-of-stream */
-		if (numBytes == -1)
-			return null;
+		return Frame.decode(inBuffer);
+	}
 
-		inBuffer.flip();
-		byte[] inData = new byte[inBuffer.limit()];
-		inBuffer.get(inData, 0, inBuffer.limit());
-		return inData;
+	/**
+	 * Read from the channel until a complete frame is available (blocking channels only).
+	 * @return the read frame.
+	 * @throws IOException if an I/O error occurs or end-of-stream is reached.
+	 */
+	public Frame readFrame() throws IOException
+	{
+		Frame frame;
+		while ((frame = nextFrame()) == null)
+		{
+			/* check if end-of-stream */
+			if (read() == -1)
+				throw new EOFException();
+		}
+		return frame;
 	}
 
 	/**
@@ -45,10 +81,7 @@ public class ChannelReader
 	 */
 	public int readInt() throws IOException
 	{
-		ByteBuffer inBuffer = ByteBuffer.allocate(4);
-		channel.read(inBuffer);
-		inBuffer.flip();
-		return inBuffer.getInt();
+		return readFrame().getInt();
 	}
 
 	/**
@@ -58,9 +91,6 @@ public class ChannelReader
 	 */
 	public String readString() throws IOException
 	{
-		ByteBuffer inBuffer = ByteBuffer.allocate(1024);
-		channel.read(inBuffer);
-		inBuffer.flip();
-		return new String(inBuffer.array());
+		return readFrame().getString();
 	}
-}
\ No newline at end of file
+}
@@ -1,14 +1,10 @@
 import java.nio.channels.SocketChannel;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.io.IOException;
 
 
 public class ChannelWriter
 {
-	/* buffer for output integers */
-	private final ByteBuffer intBuffer = ByteBuffer.allocate(4);
-
 	/* socket channel to write to */
 	private SocketChannel channel;
 
@@ -23,25 +19,43 @@ public class ChannelWriter
 	}
 
 	/**
-	 * Write an integer to the channel.
+	 * Write an integer frame to the channel.
 	 * @param number integer to write.
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public void write(int number) throws IOException
 	{
-		intBuffer.putInt(number);
-		intBuffer.flip();
-		channel.write(intBuffer);
-		intBuffer.clear();
+		write(Frame.encode(number));
+	}
+
+	/**
+	 * Write a hello frame to the channel, telling the other endpoint which features are supported.
+	 * @param features supported features - see Frame.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public void writeHello(int features) throws IOException
+	{
+		write(Frame.encode(Frame.OP_HELLO, features));
 	}
 
 	/**
-	 * Write a string to the channel.
+	 * Write a string frame to the channel.
 	 * @param message message to write.
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public void write(String message) throws IOException
 	{
-		channel.write(ByteBuffer.wrap(message.getBytes()));
+		write(Frame.encode(message));
+	}
+
+	/**
+	 * Write an encoded frame to the channel.
+	 * @param outBuffer encoded frame.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private void write(ByteBuffer outBuffer) throws IOException
+	{
+		while (outBuffer.hasRemaining())
+			channel.write(outBuffer);
 	}
-}
\ No newline at end of file
+}
@@ -1,20 +1,7 @@
-import java.nio.channels.SocketChannel;
 import java.nio.channels.SelectionKey;
 import java.io.IOException;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.ByteArrayInputStream;
-import java.util.HashMap;
 import java.util.Arrays;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import com.google.gson.Gson;
-import java.lang.StringBuilder;
-import java.lang.reflect.Type;
-import com.google.gson.reflect.TypeToken;
 import java.net.MulticastSocket;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
@@ -22,29 +9,25 @@ import java.net.InetAddress;
 
 public class ClientHandler implements Runnable
 {
-	/* it makes shure that two users can't register with the same name */
-	private static final HashSet<String> tmpNames = new HashSet<String>();
-
 	/* close client connection - see Shutdown */
 	private AtomicBoolean stop;
 
-	/* client socket channel */
-	private SocketChannel client;
-	/* communication TO client (just for closing connection) */
-	private ChannelWriter toClient;
-
-	/* data read from client */
-	private byte[] data;
+	/* request read from client */
+	private Frame data;
 	/* client's associated selection key */
 	private SelectionKey key;
 	/* reference - client status - see ClientStatus */
 	private ClientStatus clientStatus;
 	/* reference - local users databse */
-	private HashMap<String,User> usersDB;
-	/* current secret word's copy */
-	private String secretWord;
-	/* content of current secret word's copy */
-	private HashMap<Character,ArrayList<Integer>> swContent;
+	private UserRepository usersDB;
+	/* reference - password hasher */
+	private PasswordHasher hasher;
+	/* reference - login attempts limiter */
+	private LoginLimiter limiter;
+	/* current secret word snapshot */
+	private SecretWordSnapshot secretWord;
+	/* reference - statistics of the last games */
+	private GameHistory games;
 	
 	/* maximum attempts for a user to guess login password */
 	private int maxLogPassAttempts;
@@ -54,8 +37,6 @@ public class ClientHandler implements Runnable
 	private int wordleMaxAttempts;
 	/* WORDLE - length of a word (in bytes) */
 	private int wordLength;
-	/* game number */
-	private int gameNo;
 
 	/* multicast socket for sending clients sharings */
 	private MulticastSocket mcSocket;
@@ -70,50 +51,52 @@ public class ClientHandler implements Runnable
 
 	/**
 	 * Instantiate a new client handler.
+	 * @param data complete request frame read from client.
 	 * @param key client's associated selection key.
 	 * @param usersDB reference to local users databse.
+	 * @param hasher reference to password hasher.
+	 * @param limiter reference to login attempts limiter.
 	 * @param maxLogPassAttempts maximum attempts for a user to guess login password.
 	 * @param minPassLength minimum length of a password (for registration).
 	 * @param wordleMaxAttempts maximum attempts for a user to guess secret word.
-	 * @param swContent content of current secret word's copy.
+	 * @param secretWord current secret word snapshot.
+	 * @param games reference to the statistics of the last games.
 	 * @param wordLength length of a word (in bytes).
-	 * @param gameNo game number.
 	 * @param mcSocket multicast socket for sending clients sharings.
 	 * @param groupAddr multicast group address
 	 * @param groupPort multicast group port
 	 * @param stop if true, tells to close client connection
 	 */
 	public ClientHandler(
-		byte[] data,
+		Frame data,
 		SelectionKey key, 
-		HashMap<String,User> usersDB, 
+		UserRepository usersDB, 
+		PasswordHasher hasher,
+		LoginLimiter limiter,
 		int maxLogPassAttempts, 
 		int minPassLength, 
 		int wordleMaxAttempts, 
-		String secretWord, 
-		HashMap<Character,ArrayList<Integer>> swContent, 
+		SecretWordSnapshot secretWord, 
+		GameHistory games,
 		int wordLength, 
-		int gameNo, 
 		MulticastSocket mcSocket,
 		InetAddress groupAddr,
 		int groupPort,
 		AtomicBoolean stop
-	) throws IOException
+	)
 	{
-		client = (SocketChannel) key.channel();
-		toClient = new ChannelWriter(client);
-
 		this.data = data;
 		this.key = key;
 		clientStatus = (ClientStatus) key.attachment();
 		this.usersDB = usersDB;
+		this.hasher = hasher;
+		this.limiter = limiter;
 		this.maxLogPassAttempts = maxLogPassAttempts;
 		this.minPassLength = minPassLength;
 		this.wordleMaxAttempts = wordleMaxAttempts;
 		this.secretWord = secretWord;
-		this.swContent = swContent;
+		this.games = games;
 		this.wordLength = wordLength;
-		this.gameNo = gameNo;
 		this.mcSocket = mcSocket;
 		this.groupAddr = groupAddr;
 		this.groupPort = groupPort;
@@ -122,27 +105,132 @@ public class ClientHandler implements Runnable
 
 
 	/**
-	 * Read an integer from the given byte array.
-	 * @param data the byte array to be read.
+	 * Read an integer from the given request frame.
+	 * @param data the request frame to be read.
 	 * @return the read integer.
-	 * @throws IOException if an I/O error occurs.
+	 * @throws IOException if the frame does not carry an integer.
 	 */
-	public int readInt(byte[] data) throws IOException
+	public int readInt(Frame data) throws IOException
 	{
-		return new DataInputStream(new ByteArrayInputStream(data)).readInt();
+		return data.getInt();
 	}
 
 	/**
-	 * Read a string from the given byte array.
-	 * @param data the byte array to be read.
+	 * Read a string from the given request frame.
+	 * @param data the request frame to be read.
 	 * @return the read string.
+	 * @throws IOException if the frame does not carry a string.
+	 */
+	public String readString(Frame data) throws IOException
+	{
+		return data.getString();
+	}
+
+	/**
+	 * Encode a ranking as json, leaving out its last top players if it would not fit in a client frame.
+	 * @param ranking the ranking.
+	 * @return the encoded ranking.
+	 */
+	private byte[] encodeRanking(Ranking ranking)
+	{
+		String[] names = ranking.getNames();
+		float[] scores = ranking.getScores();
+		int topNo = names.length;
+		byte[] json = JsonCodecs.gson.toJson(ranking).getBytes();
+
+		while (json.length > ChannelReader.MAX_PAYLOAD && topNo > 0)
+		{
+			/* leave out enough players to cover the excess (name, score and their separators each) */
+			int excess = json.length - ChannelReader.MAX_PAYLOAD;
+			while (excess > 0 && topNo > 0)
+			{
+				topNo--;
+				excess -= JsonCodecs.gson.toJson(names[topNo]).getBytes().length + JsonCodecs.gson.toJson(scores[topNo]).length() + 2;
+			}
+
+			ranking = new Ranking(ranking.getBoard(), Arrays.copyOf(names, topNo), Arrays.copyOf(scores, topNo), ranking.getRank(), ranking.getScore(), ranking.getPlayers());
+			json = JsonCodecs.gson.toJson(ranking).getBytes();
+		}
+
+		return json;
+	}
+
+	/**
+	 * Encode game reports as a json array, keeping only the most recent ones that fit in a client frame.
+	 * @param reports the game reports, most recent first.
+	 * @return the encoded reports.
+	 */
+	private byte[] encodeReports(GameReport[] reports)
+	{
+		/* the enclosing brackets, then each report with its separator */
+		int length = 2;
+		int reportsNo = 0;
+		while (reportsNo < reports.length)
+		{
+			int reportLength = JsonCodecs.gson.toJson(reports[reportsNo]).getBytes().length + ((reportsNo == 0) ? 0 : 1);
+			if (length + reportLength > ChannelReader.MAX_PAYLOAD)
+				break;
+			length += reportLength;
+			reportsNo++;
+		}
+
+		return JsonCodecs.gson.toJson(Arrays.copyOf(reports, reportsNo)).getBytes();
+	}
+
+
+	/**
+	 * Go on handling this request on clientPool, once the work handed to another thread is done.
+	 * Client mailbox has been suspended meanwhile, so that no other request of this client is handled - see Mailbox.
+	 * @param step the rest of the request handling.
 	 */
-	public String readString(byte[] data)
+	private void resume(Runnable step)
 	{
-		return new String(data);
+		clientStatus.getMailbox().resume(() -> {
+			try {step.run();}
+			catch (Exception e)
+			{
+				System.out.println("EXCEPTION: " + e.getMessage());
+
+				/* send ACK = -1, then close client session */
+				clientStatus.respondAndClose(-1);
+			}
+		});
 	}
 
 
+	/**
+	 * Tell if this request is a cheap, non-blocking state transition (logged out menu selections, logout, declining
+	 * to share) that can be handled without leaving the reactor thread.
+	 * Anything else (users store and journal access, password hashing, dictionary lookup, json, multicast send) is not.
+	 * @return true if this request is cheap to handle.
+	 */
+	public boolean isCheap()
+	{
+		try
+		{
+			/* client features are handled with the other requests */
+			if (data.getOpcode() == Frame.OP_HELLO)
+				return false;
+
+			switch (clientStatus.getSection())
+			{
+				case 1:
+					return true;
+				case 4:
+					return readInt(data) == 4;
+				case 6:
+					return readInt(data) == 2;
+				default:
+					return false;
+			}
+		}
+		catch (IOException e)
+		{
+			/* malformed request, let a worker handle it */
+			return false;
+		}
+	}
+
 	@Override
 	public void run()
 	{
@@ -151,6 +239,13 @@ public class ClientHandler implements Runnable
 			/* if stop */
 			if (stop.get()) throw new InterruptedException();
 
+			/* if client tells its features, no ack expected */
+			if (data.getOpcode() == Frame.OP_HELLO)
+			{
+				clientStatus.setFeatures(data.getFeatures());
+				return;
+			}
+
 			switch (clientStatus.getSection())
 			{
 				case 1:
@@ -199,17 +294,10 @@ public class ClientHandler implements Runnable
 		}
 		catch (Exception e)
 		{
-			try
-			{
-				System.out.println("EXCEPTION: " + e.getMessage());
-				/* send ACK = -1 immediately */
-				toClient.write(-1);
+			System.out.println("EXCEPTION: " + e.getMessage());
 
-				/* close client session */
-				client.close();
-			}
-			catch (IOException ioe) {/* nothing to do */}
-			key.cancel();
+			/* send ACK = -1, then close client session */
+			clientStatus.respondAndClose(-1);
 		}
 	}
 
@@ -240,19 +328,17 @@ public class ClientHandler implements Runnable
 			clientStatus.setStep(1);
 		}
 
-		/* send ACK = 0 */
-		clientStatus.setAck(0);
-
 		/* if quit */
 		if (clientAction == 3)
 		{
-			/* send ACK = 0 immediately */
-			toClient.write(0);
-			
-			/* close client session */
-			client.close();
-			key.cancel();
+			/* send ACK = 0, then close client session */
+			clientStatus.respondAndClose(0);
+
+			return;
 		}
+
+		/* send ACK = 0 */
+		clientStatus.respond(0);
 	}
 
 	/**
@@ -264,21 +350,33 @@ public class ClientHandler implements Runnable
 		/* read username */
 		clientAnswer = readString(data);
 
+		/* if login attempts for username or from client address are throttled - see LoginLimiter */
+		if (limiter.isThrottled(clientAnswer, clientStatus.getAddress()))
+		{
+			/* send ACK = 3 */
+			clientStatus.respond(3);
+
+			/* keep client status unchanged */
+			return;
+		}
+
+		User user = usersDB.get(clientAnswer);
+
 		/* if username doesn't exist */
-		if (!usersDB.containsKey(clientAnswer))
+		if (user == null)
 		{
 			/* send ACK = 1 */
-			clientStatus.setAck(1);
+			clientStatus.respond(1);
 
 			/* keep client status unchanged */
 			return;
 		}
 
 		/* if user with given username is already logged in */
-		if (usersDB.get(clientAnswer).getLogStatus())
+		if (user.getLogStatus())
 		{
 			/* send ACK = 2 */
-			clientStatus.setAck(2);
+			clientStatus.respond(2);
 
 			/* keep client status unchanged */
 			return;
@@ -290,7 +388,7 @@ public class ClientHandler implements Runnable
 		clientStatus.setStep(2);
 
 		/* send ACK = 0 */
-		clientStatus.setAck(0);
+		clientStatus.respond(0);
 	}
 
 	/**
@@ -300,22 +398,57 @@ public class ClientHandler implements Runnable
 	private void handle_2_2() throws Exception
 	{
 		User user = usersDB.get(clientStatus.getName());
+		byte[] stored = user.getPasswd();
 
 		/* read password */
 		clientAnswer = readString(data);
-		clientStatus.addPassAttempt();
 
-		/* compute hash value of password */
-		MessageDigest sha = null;
-		try {sha = MessageDigest.getInstance("SHA-256");}
-		catch (NoSuchAlgorithmException e) {/* never thrown */}
-		byte[] hash = sha.digest(clientAnswer.getBytes());
+		/* if login attempts for username or from client address are throttled - see LoginLimiter */
+		if (!limiter.acquire(clientStatus.getName(), clientStatus.getAddress()))
+		{
+			/* send ACK = 5 (attempt not counted) */
+			clientStatus.respond(5);
+
+			return;
+		}
+
+		/* verify password on hashing threads, then go on in handle_2_2_verified - see PasswordHasher */
+		if (!hasher.verify(clientAnswer, stored, hash -> resume(() -> handle_2_2_verified(stored, hash))))
+		{
+			/* send ACK = 4 (server busy, attempt not counted) */
+			clientStatus.respond(4);
+
+			return;
+		}
+		clientStatus.getMailbox().suspend();
+	}
+
+	/**
+	 * Go on handling password, once verified.
+	 * @param stored hash of user's password, as verified.
+	 * @param hash null if password is wrong, otherwise hash value of password to be stored for the user.
+	 */
+	private void handle_2_2_verified(byte[] stored, byte[] hash)
+	{
+		clientStatus.addPassAttempt();
 
 		/* if password is correct */
-		if (Arrays.equals(hash, user.getPasswd()))
+		if (hash != null)
 		{
-			/* log user in */
-			user.setLogStatus(true);
+			/* log user in, unless another client logged in as this user in the meantime */
+			User user = usersDB.logIn(clientStatus.getName());
+			if (user == null)
+			{
+				/* send ACK = 3, then terminate client session */
+				clientStatus.respondAndClose(3);
+
+				return;
+			}
+			clientStatus.logIn(user);
+
+			/* replace a legacy hash value */
+			if (hash != stored)
+				usersDB.setPasswd(user, hash);
 
 			/* update status */
 			clientStatus.zeroPassAttempts();
@@ -323,7 +456,7 @@ public class ClientHandler implements Runnable
 			clientStatus.setStep(1);
 
 			/* send ACK = 0 */
-			clientStatus.setAck(0);
+			clientStatus.respond(0);
 
 			return;
 		}
@@ -331,18 +464,14 @@ public class ClientHandler implements Runnable
 		/* if client got password wrong too many times */
 		if (clientStatus.getPassAttempts() == maxLogPassAttempts)
 		{
-			/* send ACK = 2 */
-			clientStatus.setAck(2);
-
-			/* terminate client session */
-			client.close();
-			key.cancel();
+			/* send ACK = 2, then terminate client session */
+			clientStatus.respondAndClose(2);
 		}
 
 		else
 		{
 			/* send ACK = 1 */
-			clientStatus.setAck(1);
+			clientStatus.respond(1);
 		}
 	}
 
@@ -355,38 +484,25 @@ public class ClientHandler implements Runnable
 		/* read username */
 		clientAnswer = readString(data);
 
-		/* check that this username isn't already being chosen by another client */
-		synchronized (tmpNames)
+		/* if username exists, or is already being chosen by another client */
+		Reservations.Reservation reservation = usersDB.reserve(clientAnswer);
+		if (reservation == null)
 		{
-			if (!tmpNames.contains(clientAnswer))
-				tmpNames.add(clientAnswer);
-			else
-			{
-				clientStatus.setAck(1);
-				return;
-			}
-		}
-
-		/* if username exists */
-		if (usersDB.containsKey(clientAnswer))
-		{
-			/* remove this username from tmpNames */
-			tmpNames.remove(clientAnswer);
-
-			/* send ACK = 1 */
-			clientStatus.setAck(1);
+			/* send ACK = 2 if too many clients are registering, ACK = 1 otherwise */
+			clientStatus.respond(usersDB.isReservationsFull() ? 2 : 1);
 
 			/* keep client status unchanged */
 			return;
 		}
 
 		/* update status */
+		clientStatus.reserve(reservation);
 		clientStatus.setName(clientAnswer);
 		clientStatus.setSection(3);
 		clientStatus.setStep(2);
 
 		/* send ACK = 0 */
-		clientStatus.setAck(0);
+		clientStatus.respond(0);
 	}
 
 	/**
@@ -402,7 +518,7 @@ public class ClientHandler implements Runnable
 		if (clientAnswer.length() < minPassLength)
 		{
 			/* send ACK = minPassLength */
-			clientStatus.setAck(minPassLength);
+			clientStatus.respond(minPassLength);
 
 			/* keep client status unchanged */
 			return;
@@ -414,7 +530,7 @@ public class ClientHandler implements Runnable
 		clientStatus.setStep(3);
 
 		/* send ACK = 0 */
-		clientStatus.setAck(0);
+		clientStatus.respond(0);
 	}
 
 	/**
@@ -434,22 +550,63 @@ public class ClientHandler implements Runnable
 			clientStatus.setStep(2);
 
 			/* send ACK = 1 */
-			clientStatus.setAck(1);
+			clientStatus.respond(1);
+
+			return;
+		}
+
+		/* hash password on hashing threads, then go on in handle_3_3_hashed - see PasswordHasher */
+		if (!hasher.hash(clientAnswer, hash -> resume(() -> handle_3_3_hashed(hash))))
+		{
+			/* update status */
+			clientStatus.setSection(3);
+			clientStatus.setStep(2);
+
+			/* send ACK = 2 (server busy) */
+			clientStatus.respond(2);
 
 			return;
 		}
+		clientStatus.getMailbox().suspend();
+	}
 
-		/* compute hash value of password */
-		MessageDigest sha = null;
-		try {sha = MessageDigest.getInstance("SHA-256");}
-		catch (NoSuchAlgorithmException e) {/* never thrown */}
-		byte[] hash = sha.digest(clientAnswer.getBytes());
+	/**
+	 * Go on registering user, once password has been hashed.
+	 * @param hash hash value of password, null if hashing failed.
+	 */
+	private void handle_3_3_hashed(byte[] hash)
+	{
+		/* if password could not be hashed */
+		if (hash == null)
+		{
+			/* update status */
+			clientStatus.setSection(3);
+			clientStatus.setStep(2);
+
+			/* send ACK = 2 (as if server was busy) */
+			clientStatus.respond(2);
 
-		/* create new user */
-		usersDB.put(clientStatus.getName(), new User(clientStatus.getName(), hash, wordleMaxAttempts));
+			return;
+		}
 
-		/* remove this username from tmpNames */
-		tmpNames.remove(clientAnswer);
+		/* create new user (already logged in), its name is reserved for this client - see handle_3_1 */
+		User user = new User(clientStatus.getName(), hash, wordleMaxAttempts);
+		Reservations.Reservation reservation = clientStatus.getReservation();
+		if (reservation == null || !usersDB.register(user, reservation))
+		{
+			/* reservation expired and taken over by another client: choose username again */
+			clientStatus.release();
+			clientStatus.clearPasswd();
+			clientStatus.setSection(3);
+			clientStatus.setStep(1);
+
+			/* send ACK = 3 */
+			clientStatus.respond(3);
+
+			return;
+		}
+		clientStatus.release(); // turned into the user, nothing left to release
+		clientStatus.logIn(user);
 
 		/* update status */
 		clientStatus.clearPasswd(); // for security reasons
@@ -457,7 +614,7 @@ public class ClientHandler implements Runnable
 		clientStatus.setStep(1);
 
 		/* send ACK = 0 */
-		clientStatus.setAck(0);
+		clientStatus.respond(0);
 	}
 
 	/**
@@ -466,10 +623,14 @@ public class ClientHandler implements Runnable
 	 * 2: send me statistics
 	 * 4: log out
 	 * 5: quit
+	 * 6: send me victory rate leaderboard
+	 * 7: send me longest streak leaderboard
+	 * 8: send me average attempts leaderboard
+	 * 9: send me statistics of the last games
 	 */
 	private void handle_4_1() throws Exception
 	{
-		User user = usersDB.get(clientStatus.getName());
+		User user = clientStatus.getUser();
 
 		/* read client action */
 		clientAction = readInt(data);
@@ -477,31 +638,30 @@ public class ClientHandler implements Runnable
 		/* if client wants to play wordle */
 		if (clientAction == 1)
 		{
-			/* if client already played current secret word */
-			if (secretWord.equals(user.getLastWord()))
+			/* update client's last word, unless client already played current secret word */
+			if (!usersDB.startGame(user, secretWord.getWord()))
 			{
 				/* send ACK = 1 */
-				clientStatus.setAck(1);
+				clientStatus.respond(1);
 
 				/* keep client status unchanged */
 				return;
 			}
 
-			/* update client's last word */
-			user.setLastWord(secretWord);
-
 			/* prepare share object for later sharing */
-			Share share = new Share(user.getName(), gameNo, wordleMaxAttempts);
+			Share share = new Share(user.getName(), secretWord.getGame(), wordleMaxAttempts);
 
-			/* update status */
-			clientStatus.setLastWordContent(swContent);
+			/* update status (the snapshot stays valid for the whole game, even if secret word changes) */
+			clientStatus.setLastWord(secretWord);
+			clientStatus.setGameStart(System.nanoTime());
 			clientStatus.zeroWordleAttempts();
 			clientStatus.setShare(share);
 			clientStatus.setSection(5);
 			clientStatus.setStep(1);
+			secretWord.getStats().start();
 
 			/* send ACK = 0 */
-			clientStatus.setAck(0);
+			clientStatus.respond(0);
 
 			return;
 		}
@@ -509,26 +669,47 @@ public class ClientHandler implements Runnable
 		/* if client wants statistics */
 		if (clientAction == 2)
 		{
-			/* retrieve client statistics */
-			UserStats clientStats = user.getStats();
+			/* retrieve json client statistics (encoded again only if they changed since last time) */
+			byte[] statsJson = usersDB.getStatsJson(user);
 
-			/* create json statistics string */
-			Gson gson = new Gson();
-			Type statsType = new TypeToken<UserStats>(){}.getType();
-			String statsString = gson.toJson(clientStats, statsType);
+			/* send ACK = 0, followed by json string */
+			clientStatus.respond(0, statsJson);
 
-			/* send ACK = 0 */
-			clientStatus.setAck(0);
+			/* keep client status unchanged */
+			return;
+		}
+
+		/* if client wants a leaderboard (6: victory rate, 7: longest streak, 8: average attempts) */
+		if (clientAction >= 6 && clientAction <= 8)
+		{
+			/* retrieve top players and client rank */
+			Ranking ranking = usersDB.getRanking(clientAction - 6, user.getName());
 
-			/* send json string */
-			clientStatus.setMessage(statsString);
+			/* create json ranking string (as many top players as a client frame can hold) */
+			byte[] rankingJson = encodeRanking(ranking);
+
+			/* send ACK = 0, followed by json string */
+			clientStatus.respond(0, rankingJson);
+
+			/* keep client status unchanged */
+			return;
+		}
+
+		/* if client wants statistics of the last games (secret words are not revealed) */
+		if (clientAction == 9)
+		{
+			/* create json reports string (as many recent games as a client frame can hold) */
+			byte[] reportsJson = encodeReports(games.getReports(false));
+
+			/* send ACK = 0, followed by json string */
+			clientStatus.respond(0, reportsJson);
 
 			/* keep client status unchanged */
 			return;
 		}
 
 		/* log user out */
-		user.setLogStatus(false);
+		clientStatus.logOut();
 
 		/* if client wants to log out */
 		if (clientAction == 4)
@@ -538,17 +719,13 @@ public class ClientHandler implements Runnable
 			clientStatus.setStep(1);
 
 			/* send ACK = 0 */
-			clientStatus.setAck(0);
+			clientStatus.respond(0);
 
 			return;
 		}
 
-		/* send ACK = 0 immediately */
-		toClient.write(0);
-
-		/* terminate client session */
-		client.close();
-		key.cancel();
+		/* send ACK = 0, then terminate client session */
+		clientStatus.respondAndClose(0);
 	}
 
 	/**
@@ -557,16 +734,32 @@ public class ClientHandler implements Runnable
 	 */
 	private void handle_5_1() throws Exception
 	{
-		User user = usersDB.get(clientStatus.getName());
+		User user = clientStatus.getUser();
 
 		/* read guessed word */
 		clientAnswer = readString(data);
 
-		/* check if guessed word is legal */
-		if (clientAnswer.length() != wordLength || !WordsFileHandler.exists(clientAnswer))
+		/* look up guessed word among those already checked in this game */
+		SecretWordSnapshot game = clientStatus.getLastWord();
+		long packedAnswer = WordsFileHandler.pack(clientAnswer);
+		int hint = game.getGuesses().get(packedAnswer);
+
+		/* if not cached, check if guessed word is legal and build hint */
+		if (hint == GuessCache.MISS)
+		{
+			if (clientAnswer.length() != wordLength || !WordsFileHandler.exists(clientAnswer))
+				hint = GuessCache.INVALID;
+			else
+				hint = HintEngine.get().compute(game, clientAnswer);
+
+			game.getGuesses().put(packedAnswer, hint);
+		}
+
+		/* if guessed word is not legal */
+		if (hint == GuessCache.INVALID)
 		{
 			/* send ACK = 3 */
-			clientStatus.setAck(3);
+			clientStatus.respond(3);
 
 			/* keep client status unchanged */
 			return;
@@ -574,49 +767,22 @@ public class ClientHandler implements Runnable
 
 		clientStatus.addWordleAttempt();
 
-		/* build hint */
-		swContent = clientStatus.getLastWordContent();
-		StringBuilder hint = new StringBuilder();
-		ArrayList<Integer> occurrences;
-		boolean rightPos;
-		for (int i = 0; i < wordLength; i++)
-		{
-			occurrences = swContent.get(clientAnswer.charAt(i));
-			if (occurrences == null)
-			{
-				hint.append('X');
-				continue;
-			}
-			rightPos = false;
-			for (int j = 1; j <= occurrences.get(0); j++)
-			{
-				if (occurrences.get(j) == i)
-				{
-					rightPos = true;
-					break;
-				}
-			}
-			if (rightPos)
-				hint.append('+');
-			else
-				hint.append('?');
-		}
-
 		/* save hint for later sharing */
-		clientStatus.getShare().newAttempt(hint.toString());
+		clientStatus.getShare().newAttempt(hint);
 
 		/* if guessed word is secret word */
-		if (clientAnswer.equals(user.getLastWord()))
+		if (clientAnswer.equals(game.getWord()))
 		{
 			/* update client statistics */
-			user.getStats().addVictory(clientStatus.getWordleAttempts());
+			usersDB.addVictory(user, clientStatus.getWordleAttempts());
+			game.getStats().solve(clientStatus.getWordleAttempts(), System.nanoTime() - clientStatus.getGameStart());
 
 			/* update status */
 			clientStatus.setSection(6);
 			clientStatus.setStep(1);
 
 			/* send ACK = 0 */
-			clientStatus.setAck(0);
+			clientStatus.respond(0);
 
 			return;
 		}
@@ -625,23 +791,24 @@ public class ClientHandler implements Runnable
 		if (clientStatus.getWordleAttempts() == wordleMaxAttempts)
 		{
 			/* update client statistics */
-			user.getStats().addDefeat();
+			usersDB.addDefeat(user);
+			game.getStats().fail();
 
 			/* update status */
 			clientStatus.setSection(6);
 			clientStatus.setStep(1);
 
 			/* send ACK = 2 */
-			clientStatus.setAck(2);
+			clientStatus.respond(2);
 
 			return;
 		}
 
-		/* send ACK = 1 */
-		clientStatus.setAck(1);
-
-		/* send hint */
-		clientStatus.setMessage(hint.toString());
+		/* send ACK = 1, followed by hint (packed, or as symbols for clients that didn't ask for packed hints) */
+		if (clientStatus.usesPackedHints())
+			clientStatus.respondHint(1, hint);
+		else
+			clientStatus.respond(1, Hint.render(hint));
 
 		/* keep client status unchanged */
 		return;
@@ -665,26 +832,25 @@ public class ClientHandler implements Runnable
 			clientStatus.setStep(1);
 
 			/* send ACK = 0 */
-			clientStatus.setAck(0);
+			clientStatus.respond(0);
 
 			return;
 		}
 
 		/* create json string from share object */
-		Gson gson = new Gson();
-		Type shareType = new TypeToken<Share>(){}.getType();
-		String jsonShare = gson.toJson(clientStatus.getShare(), shareType);
+		String jsonShare = JsonCodecs.gson.toJson(clientStatus.getShare());
 
 		/* send json string on multicast group */
 		byte[] buffer = jsonShare.getBytes();
 		mcSocket.send(new DatagramPacket(buffer, buffer.length, groupAddr, groupPort));
+		clientStatus.getLastWord().getStats().share();
 
 		/* update status */
 		clientStatus.setSection(4);
 		clientStatus.setStep(1);
 
 		/* send ACK = 0 */
-		clientStatus.setAck(0);
+		clientStatus.respond(0);
 	}
 }
 
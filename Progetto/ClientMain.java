@@ -1,6 +1,5 @@
 import java.io.*;
 import java.net.*;
-import com.google.gson.reflect.*;
 import java.nio.channels.SocketChannel;
 import java.util.Properties;
 import java.util.Scanner;
@@ -8,10 +7,7 @@ import java.util.ArrayList;
 import java.lang.Integer;
 import java.lang.NumberFormatException;
 import java.lang.Thread;
-import java.lang.reflect.Type;
-import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
-import com.google.gson.reflect.TypeToken;
 
 public class ClientMain
 {
@@ -67,6 +63,9 @@ public class ClientMain
 			serverChannel = SocketChannel.open(new InetSocketAddress(serverAddr, serverPort));
 			fromServer = new ChannelReader(serverChannel);
 			toServer = new ChannelWriter(serverChannel);
+
+			/* ask server for packed hints, rendered here */
+			toServer.writeHello(Frame.FEATURE_PACKED_HINTS);
 		}
 		catch (IOException e)
 		{failClient("cannot connect to server");}
@@ -140,6 +139,11 @@ public class ClientMain
 				System.out.println("\nAlready logged in.");
 				continue;
 			}
+			if (serverAck == 3)
+			{
+				System.out.println("\nToo many login attempts, try again later.");
+				continue;
+			}
 			failClient("server error", serverChannel); // serverAck == -1
 		} while (true);
 
@@ -161,6 +165,21 @@ public class ClientMain
 				System.out.println("\nAttempted too many times, try again later.");
 				closeClient(serverChannel);
 			}
+			if (serverAck == 3)
+			{
+				System.out.println("\nAlready logged in.");
+				closeClient(serverChannel);
+			}
+			if (serverAck == 4)
+			{
+				System.out.println("\nServer busy, try again.");
+				continue;
+			}
+			if (serverAck == 5)
+			{
+				System.out.println("\nToo many login attempts, try again later.");
+				continue;
+			}
 			failClient("server error", serverChannel); // serverAck == -1
 		} while (true);
 
@@ -196,6 +215,11 @@ public class ClientMain
 				System.out.println("\nUsername already existent.");
 				continue;
 			}
+			if (serverAck == 2)
+			{
+				System.out.println("\nServer busy, try again.");
+				continue;
+			}
 			failClient("server error", serverChannel); // serverAck == -1
 		} while (true);
 
@@ -232,6 +256,17 @@ public class ClientMain
 				System.out.println("\nPasswords don't match");
 				continue;
 			}
+			if (serverAck == 2)
+			{
+				System.out.println("\nServer busy, try again.");
+				continue;
+			}
+			if (serverAck == 3)
+			{
+				System.out.println("\nUsername reservation expired, choose it again.");
+				register();
+				return;
+			}
 			failClient("server error", serverChannel); // serverAck == -1
 		} while (true);
 
@@ -275,6 +310,8 @@ public class ClientMain
 	 * - ShowMeSharing
 	 * - Log out
 	 * - Quit
+	 * - ShowMeLeaderboard
+	 * - ShowMeGames
 	 */
 	private static void inMenu() throws IOException
 	{
@@ -286,19 +323,39 @@ public class ClientMain
 				"2: My statistics\n" +
 				"3: Show sharing\n" +
 				"4: Log out\n" +
-				"5: Quit"
+				"5: Quit\n" +
+				"6: Leaderboards\n" +
+				"7: Game statistics"
 			);
 
 			/* read user input and check its validity */
 			try {userAction = Integer.parseInt(userInput.nextLine());}
 			catch (NumberFormatException e) {continue;}
 
-			if (userAction < 1 || userAction > 5)
+			if (userAction < 1 || userAction > 7)
 				continue;
 
 			/* if show sharing */
 			if (userAction == 3) showMeSharing();
 
+			/* if leaderboards, choose one (actions 6 to 8 for server) */
+			if (userAction == 6)
+			{
+				System.out.println(
+					"\n1: Victory rate\n" +
+					"2: Longest streak\n" +
+					"3: Average attempts"
+				);
+				try {userAction = 5 + Integer.parseInt(userInput.nextLine());}
+				catch (NumberFormatException e) {continue;}
+
+				if (userAction < 6 || userAction > 8)
+					continue;
+			}
+			/* else if game statistics (action 9 for server) */
+			else if (userAction == 7)
+				userAction = 9;
+
 			/* else send action to server */
 			toServer.write(userAction);
 
@@ -316,6 +373,8 @@ public class ClientMain
 		/* which action? */
 		if (userAction == 1) playWORDLE();
 		if (userAction == 2) sendMeStatistics();
+		if (userAction >= 6 && userAction <= 8) showMeLeaderboard();
+		if (userAction == 9) showMeGames();
 		if (userAction == 4)
 		{
 			/* end multicast session */
@@ -347,7 +406,7 @@ public class ClientMain
 			serverAck = fromServer.readInt();
 			if (serverAck == 1)
 			{
-				System.out.println("\n" + fromServer.readString());
+				System.out.println("\n" + Hint.render(fromServer.readFrame().getHint()));
 				continue;
 			}
 			else if (serverAck == 3)
@@ -408,15 +467,13 @@ public class ClientMain
 
 		String jsonShare;
 		Share nextShare;
-		String[] gameScheme;
-		Type shareType = new TypeToken<Share>(){}.getType();
-		Gson gson = new Gson();
+		int[] gameScheme;
 
 		for (int i = 0; i < sharesDB.size(); i++)
 		{
 			/* retrieve next share */
 			jsonShare = sharesDB.get(i);
-			try {nextShare = gson.fromJson(jsonShare.trim(), shareType);}
+			try {nextShare = JsonCodecs.gson.fromJson(jsonShare.trim(), Share.class);}
 			catch (JsonParseException e)
 			{
 				System.err.println("\nbad share format");
@@ -432,7 +489,7 @@ public class ClientMain
 			);
 			gameScheme = nextShare.getGameScheme();
 			for (int j = 0; j < nextShare.getAttempts(); j++)
-				System.out.println("\t" + gameScheme[j]);
+				System.out.println("\t" + Hint.render(gameScheme[j]));
 		}
 
 		/* go to actions menu for logged in users */
@@ -440,6 +497,66 @@ public class ClientMain
 	}
 
 
+	/**
+	 * Show a leaderboard
+	 */
+	private static void showMeLeaderboard() throws IOException
+	{
+		Ranking ranking = null;
+
+		/* receive json ranking from server */
+		serverAnswer = fromServer.readString();
+		try {ranking = JsonCodecs.gson.fromJson(serverAnswer.trim(), Ranking.class);}
+		catch (JsonParseException e)
+		{
+			System.err.println("\nbad leaderboard format");
+
+			/* go to actions menu for logged in users */
+			inMenu();
+		}
+
+		/* print leaderboard */
+		System.out.println("\n" + ranking.getBoard() + " leaderboard (" + ranking.getPlayers() + " players):");
+		for (int i = 0; i < ranking.getNames().length; i++)
+			System.out.println("\t" + (i+1) + ". " + ranking.getNames()[i] + " : " + ranking.getScores()[i]);
+		if (ranking.getRank() == 0)
+			System.out.println("You are not ranked yet.");
+		else
+			System.out.println("Your rank: " + ranking.getRank() + " (" + ranking.getScore() + ")");
+
+		/* go to actions menu for logged in users */
+		inMenu();
+	}
+
+
+	/**
+	 * Show statistics of the last games
+	 */
+	private static void showMeGames() throws IOException
+	{
+		GameReport[] reports = null;
+
+		/* receive json reports from server */
+		serverAnswer = fromServer.readString();
+		try {reports = JsonCodecs.gson.fromJson(serverAnswer.trim(), GameReport[].class);}
+		catch (JsonParseException e)
+		{
+			System.err.println("\nbad game statistics format");
+
+			/* go to actions menu for logged in users */
+			inMenu();
+		}
+
+		/* print reports, current game first */
+		System.out.println("\nLast games:");
+		for (int i = 0; i < reports.length; i++)
+			System.out.println("\t" + reports[i]);
+
+		/* go to actions menu for logged in users */
+		inMenu();
+	}
+
+
 	/**
 	 * Show user statistics
 	 */
@@ -447,12 +564,10 @@ public class ClientMain
 	{
 		UserStats stats = null;
 		float[] guessDistr;
-		Type statsType = new TypeToken<UserStats>(){}.getType();
-		Gson gson = new Gson();
 
 		/* receive json stats from server */
 		serverAnswer = fromServer.readString();
-		try {stats = gson.fromJson(serverAnswer.trim(), statsType);}
+		try {stats = JsonCodecs.gson.fromJson(serverAnswer.trim(), UserStats.class);}
 		catch (JsonParseException e)
 		{
 			System.err.println("\nbad statistics format");
@@ -1,11 +1,23 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.CancelledKeyException;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.ArrayList;
-import java.lang.Thread;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 public class ClientStatus
 {
+	/* maximum size of a client request frame (header included) */
+	private static final int MAX_REQUEST_SIZE = 1024;
+	/* maximum number of responses waiting to be sent to client */
+	private static final int MAX_PENDING_RESPONSES = 64;
+
 	/* client unique id */
 	private int id;
 	/* section & step - see server's flowchart*/
@@ -13,39 +25,67 @@ public class ClientStatus
 	private int step = 1;
 	/* client name */
 	private String username;
+	/* logged in user (null if none) - logged out by close, on any thread */
+	private final AtomicReference<User> user = new AtomicReference<User>();
+	/* name reserved for registration (null if none) - released by close, on any thread */
+	private final AtomicReference<Reservations.Reservation> reservation = new AtomicReference<Reservations.Reservation>();
 	/* client's candidate password (for registration) */
 	private String passwd;
 	/* password attempts (for login) */
 	private int logPassAttempts = 0;
 	/* word attempts in last game */
 	private int wordleAttempts = 0;
-	/* last secret word content (for comparison with guessed words) */
-	private HashMap<Character,ArrayList<Integer>> lastWordContent;
+	/* time at which the last game started (nanoseconds, for game statistics) */
+	private long gameStart;
+	/* secret word snapshot of the last game (for comparison with guessed words) */
+	private SecretWordSnapshot lastWord;
 	/* client current sharing object */
 	private Share share;
+	/* features supported by client - see Frame */
+	private int features = 0;
+
+	/* reassembly buffer for partially received request frames */
+	private final ByteBuffer inBuffer = ByteBuffer.allocate(MAX_REQUEST_SIZE);
 
-	/* server ack to be sent to client */
-	private int serverAck;
-	/* server message to be sent to client */
-	private String serverMessage;
-	/* prevent the same ack/message to be read from client more than once */
-	/* 0: can't get */
-	/* 1: can get ack */
-	/* 2: can get message */
-	private int canGet = 0; // no need to have it atomic
+	/* client's associated selection key */
+	private SelectionKey key;
+	/* client remote address (null if unknown) */
+	private InetAddress address;
+	/* reactor owning client's connection */
+	private Reactor reactor;
+	/* client connection has been closed */
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	/* client requests waiting to be handled, one at a time and in order */
+	private Mailbox mailbox;
+	/* responses waiting to be sent to client */
+	private final ResponseQueue responses = new ResponseQueue(MAX_PENDING_RESPONSES);
+	/* encoded response being sent to client - accessed by selector thread only */
+	private ByteBuffer outBuffer = ByteBuffer.allocate(256).flip();
+	/* close client connection once output is drained - accessed by selector thread only */
+	private boolean closing = false;
 
 
 	/**
 	 * Instantiate a new client status associated with a new client.
 	 * @param id the unique client id.
+	 * @param key client's associated selection key.
+	 * @param reactor reactor owning client's connection.
+	 * @param clientPool executor for handling client requests.
 	 */
-	public ClientStatus(int id)
+	public ClientStatus(int id, SelectionKey key, Reactor reactor, Executor clientPool)
 	{
 		this.id = id;
+		this.key = key;
+		this.reactor = reactor;
+		this.mailbox = new Mailbox(clientPool);
+		try {this.address = ((InetSocketAddress) ((SocketChannel) key.channel()).getRemoteAddress()).getAddress();}
+		catch (IOException | ClassCastException e) {this.address = null;}
 	}
 
 	/*id*/
 	public int getID() {return id;}
+	/* address */
+	public InetAddress getAddress() {return address;}
 	/* section */
 	public int getSection() {return section;}
 	public void setSection(int nextSection) {section = nextSection;}
@@ -55,6 +95,8 @@ public class ClientStatus
 	/*username*/
 	public String getName() {return username;}
 	public void setName(String name) {username = name;}
+	/* (reference to) user */
+	public User getUser() {return user.get();}
 	/* passwd */
 	public String getPasswd() {return passwd;}
 	public void setPasswd(String pass) {passwd = pass;}
@@ -67,71 +109,165 @@ public class ClientStatus
 	public int getWordleAttempts() {return wordleAttempts;}
 	public void addWordleAttempt() {wordleAttempts++;}
 	public void zeroWordleAttempts() {wordleAttempts = 0;}
-	/* lastWordContent */
-	public HashMap<Character,ArrayList<Integer>> getLastWordContent() {return new HashMap<Character,ArrayList<Integer>>(lastWordContent);}
-	public void setLastWordContent(HashMap<Character,ArrayList<Integer>> newContent) {lastWordContent = newContent;}
+	/* gameStart */
+	public long getGameStart() {return gameStart;}
+	public void setGameStart(long time) {gameStart = time;}
+	/* (reference to) lastWord */
+	public SecretWordSnapshot getLastWord() {return lastWord;}
+	public void setLastWord(SecretWordSnapshot newWord) {lastWord = newWord;}
 	/* share */
 	public Share getShare() {return share;}
 	public void setShare(Share newShare) {share = newShare;}
+	/* features */
+	public void setFeatures(int clientFeatures) {features = clientFeatures;}
+	public boolean usesPackedHints() {return (features & Frame.FEATURE_PACKED_HINTS) != 0;}
+	/* (reference to) mailbox */
+	public Mailbox getMailbox() {return mailbox;}
+	/* (reference to) inBuffer */
+	public ByteBuffer getInBuffer() {return inBuffer;}
 
-	/* serverAck */
-	public int getAck()
-	{
-		int ack = serverAck;
-		canGet = 0;
-		return ack;
-	}
-	public void setAck(int ack)
-	{
-		/* make sure that client has time to read previous ack/message */
-		while (canGet != 0)
-		{
-			try {Thread.sleep(100);}
-			catch (InterruptedException e)
-			{continue;}
-		}
-		serverAck = ack;
-		canGet = 1;
-	}
-	/* serverMessage */
-	public String getMessage()
-	{
-		String message = serverMessage;
-		canGet = 0;
-		return message;
-	}
-	public void setMessage(String message)
-	{
-		/* make sure that client has time to read previous ack/message */
-		while (canGet != 0)
-		{
-			try {Thread.sleep(100);}
-			catch (InterruptedException e)
-			{continue;}
-		}
-		serverMessage = message;
-		canGet = 2;
-	}
-	/* canGet */
-	public int canGetData() {return canGet;}
-}
-
-
-
-
+	/**
+	 * Queue an ack for client, without blocking.
+	 * @param ack server ack.
+	 */
+	public void respond(int ack) {respond(new Response(ack, (String) null, false));}
 
+	/**
+	 * Queue an ack followed by a message for client, without blocking.
+	 * @param ack server ack.
+	 * @param message server message.
+	 */
+	public void respond(int ack, String message) {respond(new Response(ack, message, false));}
 
+	/**
+	 * Queue an ack followed by an already encoded message for client, without blocking.
+	 * @param ack server ack.
+	 * @param message encoded server message (shared, not modified).
+	 */
+	public void respond(int ack, byte[] message) {respond(new Response(ack, message, false));}
 
+	/**
+	 * Queue an ack followed by a packed hint for client, without blocking.
+	 * @param ack server ack.
+	 * @param hint packed hint - see Hint.
+	 */
+	public void respondHint(int ack, int hint) {respond(new Response(ack, hint));}
 
+	/**
+	 * Queue a last ack for client, then close its connection once sent.
+	 * @param ack server ack.
+	 */
+	public void respondAndClose(int ack) {respond(new Response(ack, (String) null, true));}
 
+	/**
+	 * Queue a response and make the selector watch for write readiness.
+	 * @param response response to queue.
+	 */
+	private void respond(Response response)
+	{
+		try
+		{
+			/* if client is not reading its responses, drop it */
+			if (!responses.offer(response))
+			{
+				close();
+				return;
+			}
 
+			key.interestOpsOr(SelectionKey.OP_WRITE);
+			key.selector().wakeup();
+		}
+		catch (CancelledKeyException e) {/* client disconnected, nothing to write to */}
+	}
 
+	/**
+	 * Close client connection (only the first call has effect).
+	 */
+	public void close()
+	{
+		if (!closed.compareAndSet(false, true))
+			return;
 
+		try {key.channel().close();}
+		catch (IOException e) {/* do nothing */}
+		key.cancel();
+		reactor.clientClosed();
 
+		/* a client that disconnects without logging out must not keep its user logged in, nor a reserved name */
+		logOut();
+		release();
+	}
 
+	/**
+	 * Bind a user, already logged in (see User.logIn), to this client.
+	 * If client connection has been closed in the meantime, the user is logged out at once.
+	 * @param loggedUser the logged in user.
+	 */
+	public void logIn(User loggedUser)
+	{
+		user.set(loggedUser);
+		if (closed.get())
+			logOut();
+	}
 
+	/**
+	 * Log out the user bound to this client, if any.
+	 */
+	public void logOut()
+	{
+		User loggedUser = user.getAndSet(null);
+		if (loggedUser != null)
+			loggedUser.logOut();
+	}
 
+	/**
+	 * Bind a name reservation to this client, releasing the previous one (if any).
+	 * If client connection has been closed in the meantime, the reservation is released at once.
+	 * @param newReservation the reservation.
+	 */
+	public void reserve(Reservations.Reservation newReservation)
+	{
+		Reservations.Reservation previous = reservation.getAndSet(newReservation);
+		if (previous != null)
+			previous.release();
+		if (closed.get())
+			release();
+	}
 
+	/* reservation */
+	public Reservations.Reservation getReservation() {return reservation.get();}
 
+	/**
+	 * Release the name reservation bound to this client, if any.
+	 */
+	public void release()
+	{
+		Reservations.Reservation previous = reservation.getAndSet(null);
+		if (previous != null)
+			previous.release();
+	}
 
+	/**
+	 * Get data to be written to client, encoding the next queued response when the previous one has been sent.
+	 * To be called by selector thread only.
+	 * @return a buffer holding data to be written, or null if there is nothing to write.
+	 */
+	public ByteBuffer getOutput()
+	{
+		Response response;
+		while (!outBuffer.hasRemaining())
+		{
+			if ((response = responses.poll()) == null)
+				return null;
 
+			outBuffer = response.encode(outBuffer);
+			if (response.closes())
+				closing = true;
+		}
+		return outBuffer;
+	}
+	/* responses */
+	public boolean hasOutput() {return outBuffer.hasRemaining() || !responses.isEmpty();}
+	/* closing */
+	public boolean isClosing() {return closing;}
+}
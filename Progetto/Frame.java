@@ -0,0 +1,188 @@
+import java.nio.ByteBuffer;
+import java.net.ProtocolException;
+
+
+public class Frame
+{
+	/* size of the frame header: payload length (int) + opcode (int) */
+	public static final int HEADER_SIZE = 8;
+
+	/* opcode - payload is a single integer (action or ack) */
+	public static final int OP_INT = 1;
+	/* opcode - payload is a string */
+	public static final int OP_STRING = 2;
+	/* opcode - payload is a packed hint (integer) - see Hint */
+	public static final int OP_HINT = 3;
+	/* opcode - payload holds the features supported by the client (integer), sent before any request */
+	public static final int OP_HELLO = 4;
+
+	/* features - client understands packed hints */
+	public static final int FEATURE_PACKED_HINTS = 1;
+
+	/* type of the payload */
+	private int opcode;
+	/* raw payload data */
+	private byte[] payload;
+
+
+	/**
+	 * Instantiate a new frame.
+	 * @param opcode type of the payload.
+	 * @param payload raw payload data.
+	 */
+	public Frame(int opcode, byte[] payload)
+	{
+		this.opcode = opcode;
+		this.payload = payload;
+	}
+
+	/* opcode */
+	public int getOpcode() {return opcode;}
+	/* (reference to) payload */
+	public byte[] getPayload() {return payload;}
+
+	/**
+	 * Interpret the payload as an integer.
+	 * @return the integer carried by this frame.
+	 * @throws ProtocolException if this frame does not carry an integer.
+	 */
+	public int getInt() throws ProtocolException
+	{
+		if (opcode != OP_INT)
+			throw new ProtocolException("integer frame expected");
+
+		return getInteger();
+	}
+
+	/**
+	 * Interpret the payload as a packed hint.
+	 * @return the packed hint carried by this frame - see Hint.
+	 * @throws ProtocolException if this frame does not carry a packed hint.
+	 */
+	public int getHint() throws ProtocolException
+	{
+		if (opcode != OP_HINT)
+			throw new ProtocolException("hint frame expected");
+
+		return getInteger();
+	}
+
+	/**
+	 * Interpret the payload as features supported by the client.
+	 * @return the features carried by this frame.
+	 * @throws ProtocolException if this frame does not carry features.
+	 */
+	public int getFeatures() throws ProtocolException
+	{
+		if (opcode != OP_HELLO)
+			throw new ProtocolException("hello frame expected");
+
+		return getInteger();
+	}
+
+	/**
+	 * Decode an integer payload, whatever the opcode.
+	 * @return the integer carried by this frame.
+	 * @throws ProtocolException if the payload is not an integer.
+	 */
+	private int getInteger() throws ProtocolException
+	{
+		if (payload.length != 4)
+			throw new ProtocolException("integer payload expected");
+
+		return ((payload[0] & 0xFF) << 24) | ((payload[1] & 0xFF) << 16) | ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF);
+	}
+
+	/**
+	 * Interpret the payload as a string.
+	 * @return the string carried by this frame.
+	 * @throws ProtocolException if this frame does not carry a string.
+	 */
+	public String getString() throws ProtocolException
+	{
+		if (opcode != OP_STRING)
+			throw new ProtocolException("string frame expected");
+
+		return new String(payload);
+	}
+
+
+	/**
+	 * Decode the next complete frame from a reassembly buffer.
+	 * The buffer is expected in write mode (as left by channel reads) and is left in write mode,
+	 * with the consumed frame removed from it.
+	 * @param inBuffer reassembly buffer.
+	 * @return the decoded frame, or null if the buffer does not contain a complete frame yet.
+	 * @throws ProtocolException if the buffer contains a malformed frame.
+	 */
+	public static Frame decode(ByteBuffer inBuffer) throws ProtocolException
+	{
+		inBuffer.flip();
+		try
+		{
+			/* if header is not complete yet */
+			if (inBuffer.remaining() < HEADER_SIZE)
+				return null;
+
+			/* peek payload length, without consuming the header */
+			int length = inBuffer.getInt(inBuffer.position());
+			if (length < 0 || length > inBuffer.capacity() - HEADER_SIZE)
+				throw new ProtocolException("illegal frame length: " + length);
+
+			/* if payload is not complete yet */
+			if (inBuffer.remaining() < HEADER_SIZE + length)
+				return null;
+
+			/* consume the whole frame */
+			inBuffer.getInt();
+			int opcode = inBuffer.getInt();
+			byte[] payload = new byte[length];
+			inBuffer.get(payload);
+
+			return new Frame(opcode, payload);
+		}
+		finally
+		{
+			/* keep partial data for next reads */
+			inBuffer.compact();
+		}
+	}
+
+	/**
+	 * Encode a frame carrying an integer.
+	 * @param number integer to encode.
+	 * @return a buffer ready to be written on a channel.
+	 */
+	public static ByteBuffer encode(int number)
+	{
+		return encode(OP_INT, number);
+	}
+
+	/**
+	 * Encode a frame carrying an integer payload.
+	 * @param opcode type of the payload (OP_INT, OP_HINT or OP_HELLO).
+	 * @param number integer to encode.
+	 * @return a buffer ready to be written on a channel.
+	 */
+	public static ByteBuffer encode(int opcode, int number)
+	{
+		ByteBuffer outBuffer = ByteBuffer.allocate(HEADER_SIZE + 4);
+		outBuffer.putInt(4).putInt(opcode).putInt(number);
+		outBuffer.flip();
+		return outBuffer;
+	}
+
+	/**
+	 * Encode a frame carrying a string.
+	 * @param message string to encode.
+	 * @return a buffer ready to be written on a channel.
+	 */
+	public static ByteBuffer encode(String message)
+	{
+		byte[] payload = message.getBytes();
+		ByteBuffer outBuffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+		outBuffer.putInt(payload.length).putInt(OP_STRING).put(payload);
+		outBuffer.flip();
+		return outBuffer;
+	}
+}
@@ -0,0 +1,66 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+public class GameHistory
+{
+	/* statistics of the last games, by game number modulo ring size */
+	private final AtomicReferenceArray<GameStats> games;
+	/* maximum attempts for a user to guess secret word */
+	private final int maxAttempts;
+	/* number of the current game */
+	private volatile int currentGame = 0;
+
+
+	/**
+	 * Instantiate a new (empty) games history.
+	 * @param size number of games kept.
+	 * @param maxAttempts maximum attempts for a user to guess secret word.
+	 */
+	public GameHistory(int size, int maxAttempts)
+	{
+		this.games = new AtomicReferenceArray<GameStats>(size);
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Start keeping statistics of a new game, dropping those of the oldest one (if the ring is full).
+	 * The game is reported once published, see publish.
+	 * @param gameNo game number.
+	 * @param word secret word.
+	 * @return statistics of the new game.
+	 */
+	public GameStats newGame(int gameNo, String word)
+	{
+		GameStats stats = new GameStats(gameNo, word, maxAttempts);
+		games.set(gameNo % games.length(), stats);
+		return stats;
+	}
+
+	/**
+	 * Make a new game the current one, once its secret word snapshot has been published.
+	 * @param gameNo game number.
+	 */
+	public void publish(int gameNo)
+	{
+		currentGame = gameNo;
+	}
+
+	/**
+	 * @param revealWords include secret words: for the admin only, as a player keeps playing a game after its secret
+	 * word has changed (no game can be told over).
+	 * @return reports of the kept games, the current one first.
+	 */
+	public GameReport[] getReports(boolean revealWords)
+	{
+		int current = currentGame;
+		ArrayList<GameReport> reports = new ArrayList<GameReport>(games.length());
+		for (int gameNo = current; gameNo > 0 && gameNo > current - games.length(); gameNo--)
+		{
+			GameStats stats = games.get(gameNo % games.length());
+			if (stats != null && stats.getGame() == gameNo)
+				reports.add(stats.report(revealWords));
+		}
+		return reports.toArray(new GameReport[0]);
+	}
+}
@@ -0,0 +1,75 @@
+public class GameReport
+{
+	/* game number */
+	private int gameNo;
+	/* secret word (null if not revealed) */
+	private String word;
+	/* players who started, solved, failed and shared the game */
+	private long started;
+	private long solved;
+	private long failed;
+	private long shares;
+	/* games solved at each number of attempts (from 1) */
+	private long[] attempts;
+	/* median solve time, in seconds (upper bound, within a factor of two - see GameStats) */
+	private long medianSolveTime;
+
+	/**
+	 * Instantiate new game report object.
+	 * @param gameNo game number.
+	 * @param word secret word (null if not revealed).
+	 * @param started players who started the game.
+	 * @param solved players who guessed secret word.
+	 * @param failed players who didn't.
+	 * @param shares players who shared their game.
+	 * @param attempts games solved at each number of attempts (from 1).
+	 * @param medianSolveTime median solve time, in seconds.
+	 */
+	public GameReport(int gameNo, String word, long started, long solved, long failed, long shares, long[] attempts, long medianSolveTime)
+	{
+		this.gameNo = gameNo;
+		this.word = word;
+		this.started = started;
+		this.solved = solved;
+		this.failed = failed;
+		this.shares = shares;
+		this.attempts = attempts;
+		this.medianSolveTime = medianSolveTime;
+	}
+
+	/* gameNo */
+	public int getGame() {return gameNo;}
+	/* word */
+	public String getWord() {return word;}
+	/* started */
+	public long getStarted() {return started;}
+	/* solved */
+	public long getSolved() {return solved;}
+	/* failed */
+	public long getFailed() {return failed;}
+	/* shares */
+	public long getShares() {return shares;}
+	/* attempts */
+	public long[] getAttempts() {return attempts;}
+	/* medianSolveTime */
+	public long getMedianSolveTime() {return medianSolveTime;}
+
+	/**
+	 * @return a printable summary of this report.
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder distribution = new StringBuilder();
+		for (int i = 0; i < attempts.length; i++)
+			distribution.append((i == 0) ? "" : " ").append(attempts[i]);
+
+		return "game " + gameNo + ((word == null) ? "" : " (" + word + ")") +
+			": started " + started +
+			", solved " + solved +
+			", failed " + failed +
+			", shared " + shares +
+			", attempts [" + distribution + "]" +
+			", median solve time " + ((solved == 0) ? "-" : "<" + medianSolveTime + " s");
+	}
+}
@@ -0,0 +1,92 @@
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class GameStats
+{
+	/* number of solve time buckets */
+	private static final int TIME_BUCKETS = 16;
+
+	/* game number */
+	private final int gameNo;
+	/* secret word */
+	private final String word;
+	/* players who started, solved, failed and shared the game (LongAdders, updated by many client handlers at once) */
+	private final LongAdder started = new LongAdder();
+	private final LongAdder solved = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder shares = new LongAdder();
+	/* games solved at each number of attempts (from 1) */
+	private final LongAdder[] attempts;
+	/* solve times histogram: bucket i counts games solved in [2^(i-1), 2^i) seconds, the last one all slower games */
+	private final LongAdder[] solveTimes = new LongAdder[TIME_BUCKETS];
+
+
+	/**
+	 * Instantiate new (empty) game statistics.
+	 * @param gameNo game number.
+	 * @param word secret word.
+	 * @param maxAttempts maximum attempts for a user to guess secret word.
+	 */
+	public GameStats(int gameNo, String word, int maxAttempts)
+	{
+		this.gameNo = gameNo;
+		this.word = word;
+		this.attempts = new LongAdder[maxAttempts];
+		for (int i = 0; i < maxAttempts; i++)
+			attempts[i] = new LongAdder();
+		for (int i = 0; i < TIME_BUCKETS; i++)
+			solveTimes[i] = new LongAdder();
+	}
+
+	/* a player started the game */
+	public void start() {started.increment();}
+	/* a player failed to guess secret word */
+	public void fail() {failed.increment();}
+	/* a player shared its game */
+	public void share() {shares.increment();}
+
+	/**
+	 * A player guessed secret word.
+	 * @param attemptsNo attempts that took the player.
+	 * @param solveTime nanoseconds that took the player.
+	 */
+	public void solve(int attemptsNo, long solveTime)
+	{
+		solved.increment();
+		attempts[attemptsNo - 1].increment();
+		long seconds = Math.max(0, solveTime / 1_000_000_000L);
+		solveTimes[Math.min(TIME_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(seconds))].increment();
+	}
+
+	/* gameNo */
+	public int getGame() {return gameNo;}
+
+	/**
+	 * @param revealWord include secret word (for the admin only - see GameHistory).
+	 * @return a report of the current statistics (counters are read one by one, while they may be updated).
+	 */
+	public GameReport report(boolean revealWord)
+	{
+		long[] distribution = new long[attempts.length];
+		for (int i = 0; i < attempts.length; i++)
+			distribution[i] = attempts[i].sum();
+
+		/* median solve time: upper bound of the bucket holding the middle solved game */
+		long[] times = new long[TIME_BUCKETS];
+		long total = 0;
+		for (int i = 0; i < TIME_BUCKETS; i++)
+			total += (times[i] = solveTimes[i].sum());
+		long median = 0;
+		for (long count = 0, i = 0; total > 0 && i < TIME_BUCKETS; i++)
+		{
+			count += times[(int) i];
+			if (2 * count >= total)
+			{
+				median = 1L << i;
+				break;
+			}
+		}
+
+		return new GameReport(gameNo, revealWord ? word : null, started.sum(), solved.sum(), failed.sum(), shares.sum(), distribution, median);
+	}
+}
@@ -0,0 +1,111 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class GuessCache
+{
+	/* results are packed hints (never negative, see Hint) or one of the following */
+	/* result - guessed word is not cached */
+	public static final int MISS = -2;
+	/* result - guessed word is not a legal word */
+	public static final int INVALID = -1;
+
+	/* lookups answered by the cache, in all games */
+	private static final LongAdder hits = new LongAdder();
+	/* lookups not answered by the cache, in all games */
+	private static final LongAdder misses = new LongAdder();
+
+	/* cache slots, direct-mapped: a new entry replaces the one in its slot */
+	private final AtomicReferenceArray<Entry> slots;
+	/* slots.length() - 1 (slots are a power of two) */
+	private final int mask;
+
+
+	/**
+	 * Cached result for a guessed word (immutable, so it can be shared without locking).
+	 */
+	private static final class Entry
+	{
+		/* packed guessed word - see WordsFileHandler.pack */
+		private final long word;
+		/* packed hint, or INVALID */
+		private final int result;
+
+		private Entry(long word, int result)
+		{
+			this.word = word;
+			this.result = result;
+		}
+	}
+
+
+	/**
+	 * Instantiate a new (empty) cache.
+	 * @param size maximum number of cached words, rounded up to a power of two (0 disables caching).
+	 */
+	public GuessCache(int size)
+	{
+		int slotsNo = (size <= 1) ? Math.max(size, 0) : Integer.highestOneBit(size - 1) << 1;
+		slots = new AtomicReferenceArray<Entry>(slotsNo);
+		mask = slotsNo - 1;
+	}
+
+	/**
+	 * Spread the bits of a packed word, so that similar words end up in different slots.
+	 * @param word packed word.
+	 * @return slot of the word.
+	 */
+	private int slotOf(long word)
+	{
+		long h = word * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Look up the result for a guessed word.
+	 * @param word packed guessed word, negative if it cannot be packed (never cached).
+	 * @return the packed hint, INVALID if the word is not legal, MISS if the word is not cached.
+	 */
+	public int get(long word)
+	{
+		if (word < 0 || slots.length() == 0)
+			return MISS;
+
+		Entry entry = slots.get(slotOf(word));
+		if (entry == null || entry.word != word)
+		{
+			misses.increment();
+			return MISS;
+		}
+
+		hits.increment();
+		return entry.result;
+	}
+
+	/**
+	 * Cache the result for a guessed word, evicting the word previously held by its slot.
+	 * @param word packed guessed word, negative if it cannot be packed (never cached).
+	 * @param result packed hint, or INVALID.
+	 */
+	public void put(long word, int result)
+	{
+		if (word < 0 || slots.length() == 0)
+			return;
+
+		slots.lazySet(slotOf(word), new Entry(word, result));
+	}
+
+	/**
+	 * @return a printable summary of the cache counters.
+	 */
+	public static String getCounters()
+	{
+		long hitsNo = hits.sum();
+		long missesNo = misses.sum();
+		long lookups = hitsNo + missesNo;
+
+		return "guess cache: hits " + hitsNo +
+			", misses " + missesNo +
+			", hit rate " + ((lookups == 0) ? 0 : (hitsNo * 100 / lookups)) + "%";
+	}
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+public class HeapUserStore implements UserStore
+{
+	/* expected number of users, to avoid resizing the map under load */
+	private static final int INITIAL_CAPACITY = 1 << 12;
+
+	/* registered users, by name - replaced by presize only */
+	private ConcurrentHashMap<String,User> users = new ConcurrentHashMap<String,User>(INITIAL_CAPACITY);
+
+
+	@Override
+	public User get(String name)
+	{
+		return users.get(name);
+	}
+
+	@Override
+	public boolean contains(String name)
+	{
+		return users.containsKey(name);
+	}
+
+	@Override
+	public boolean accepts(String name)
+	{
+		return true;
+	}
+
+	@Override
+	public boolean add(User user)
+	{
+		return users.putIfAbsent(user.getName(), user) == null;
+	}
+
+	@Override
+	public void restore(User user)
+	{
+		users.put(user.getName(), user);
+	}
+
+	@Override
+	public void update(User user)
+	{
+		/* users are never copied */
+	}
+
+	@Override
+	public User logIn(String name)
+	{
+		User user = users.get(name);
+		return (user != null && user.logIn()) ? user : null;
+	}
+
+	@Override
+	public void logOutAll()
+	{
+		users.values().forEach(user -> user.logOut());
+	}
+
+	@Override
+	public void presize(int expected)
+	{
+		if (users.isEmpty() && expected > INITIAL_CAPACITY)
+			users = new ConcurrentHashMap<String,User>(expected);
+	}
+
+	@Override
+	public List<User> view()
+	{
+		return new ArrayList<User>(users.values());
+	}
+
+	@Override
+	public int size()
+	{
+		return users.size();
+	}
+
+	@Override
+	public String getCounters()
+	{
+		return "users store: heap, users " + users.size();
+	}
+}
@@ -0,0 +1,89 @@
+public class Hint
+{
+	/* bits used by each position of a packed hint */
+	private static final int CODE_BITS = 2;
+	/* maximum length of a packed hint (positions that fit in an int, keeping packed hints non-negative) */
+	public static final int MAX_LENGTH = Integer.SIZE / CODE_BITS - 1;
+
+	/* position code - no letter (end of hint) */
+	public static final int NONE = 0;
+	/* position code - letter not in the secret word */
+	public static final int ABSENT = 1;
+	/* position code - letter in the secret word, but in another position */
+	public static final int MISPLACED = 2;
+	/* position code - letter in the right position */
+	public static final int RIGHT = 3;
+
+	/* symbols displayed for each position code */
+	private static final char[] SYMBOLS = {' ', 'X', '?', '+'};
+
+
+	/**
+	 * Get the code of a position of a packed hint.
+	 * A packed hint holds the code of position i in bits 2i and 2i+1, unused positions are NONE.
+	 * @param hint packed hint.
+	 * @param position position in the hint.
+	 * @return the position code.
+	 */
+	public static int get(int hint, int position)
+	{
+		return (hint >>> (position * CODE_BITS)) & 0x3;
+	}
+
+	/**
+	 * Set the code of a position of a packed hint.
+	 * @param hint packed hint.
+	 * @param position position in the hint.
+	 * @param code position code.
+	 * @return the updated packed hint.
+	 */
+	public static int set(int hint, int position, int code)
+	{
+		return hint | (code << (position * CODE_BITS));
+	}
+
+	/**
+	 * @param hint packed hint.
+	 * @return the number of positions of the hint.
+	 */
+	public static int length(int hint)
+	{
+		return (Integer.SIZE - Integer.numberOfLeadingZeros(hint) + 1) / CODE_BITS;
+	}
+
+	/**
+	 * Render a packed hint for display: '+' right position, '?' misplaced, 'X' absent.
+	 * @param hint packed hint.
+	 * @return the hint as a String of symbols.
+	 */
+	public static String render(int hint)
+	{
+		char[] symbols = new char[length(hint)];
+		for (int i = 0; i < symbols.length; i++)
+			symbols[i] = SYMBOLS[get(hint, i)];
+		return new String(symbols);
+	}
+
+	/**
+	 * Parse a hint rendered by render.
+	 * @param symbols the hint as a String of symbols.
+	 * @return the packed hint, or -1 if symbols is not a rendered hint.
+	 */
+	public static int parse(String symbols)
+	{
+		if (symbols.length() > MAX_LENGTH)
+			return -1;
+
+		int hint = 0;
+		for (int i = 0; i < symbols.length(); i++)
+		{
+			int code = ABSENT;
+			while (code <= RIGHT && SYMBOLS[code] != symbols.charAt(i))
+				code++;
+			if (code > RIGHT)
+				return -1;
+			hint = set(hint, i, code);
+		}
+		return hint;
+	}
+}
@@ -0,0 +1,67 @@
+public class HintEngine
+{
+	/* one engine per thread, so that buffers can be reused without locking */
+	private static final ThreadLocal<HintEngine> engines = ThreadLocal.withInitial(HintEngine::new);
+
+	/* occurrences of each letter of the secret word not matched yet */
+	private final int[] remaining = new int[SecretWordSnapshot.ALPHABET_SIZE];
+	/* letters of the guessed word, as indexes from 0 ('a') to 25 ('z') */
+	private final byte[] guessed = new byte[Hint.MAX_LENGTH];
+
+
+	/**
+	 * @return the hint engine of the calling thread.
+	 */
+	public static HintEngine get()
+	{
+		return engines.get();
+	}
+
+	/**
+	 * Compare a guessed word with the secret word, without allocating.
+	 * A guessed letter is RIGHT if in the same position of the secret word, MISPLACED if the secret word contains
+	 * further occurrences of it not matched by other positions (leftmost first), ABSENT otherwise.
+	 * @param secretWord secret word snapshot (at most Hint.MAX_LENGTH letters).
+	 * @param guess guessed word, made of lowercase letters, as long as the secret word.
+	 * @return the packed hint - see Hint.
+	 */
+	public int compute(SecretWordSnapshot secretWord, CharSequence guess)
+	{
+		int length = secretWord.length();
+		int hint = Hint.NONE;
+
+		/* reset counts of the guessed letters */
+		for (int i = 0; i < length; i++)
+		{
+			guessed[i] = (byte) (guess.charAt(i) - 'a');
+			remaining[guessed[i]] = secretWord.countOf(guessed[i]);
+		}
+
+		/* first pass: letters in the right position */
+		for (int i = 0; i < length; i++)
+		{
+			if (secretWord.letterAt(i) == guessed[i])
+			{
+				hint = Hint.set(hint, i, Hint.RIGHT);
+				remaining[guessed[i]]--;
+			}
+		}
+
+		/* second pass: other letters, as long as unmatched occurrences are left */
+		for (int i = 0; i < length; i++)
+		{
+			if (Hint.get(hint, i) != Hint.NONE)
+				continue;
+
+			if (remaining[guessed[i]] > 0)
+			{
+				hint = Hint.set(hint, i, Hint.MISPLACED);
+				remaining[guessed[i]]--;
+			}
+			else
+				hint = Hint.set(hint, i, Hint.ABSENT);
+		}
+
+		return hint;
+	}
+}
@@ -0,0 +1,524 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+
+public class Journal extends Thread
+{
+	/* record type - new user registered */
+	private static final byte REGISTER = 1;
+	/* record type - user started a new game */
+	private static final byte START = 2;
+	/* record type - user won a game */
+	private static final byte VICTORY = 3;
+	/* record type - user lost a game */
+	private static final byte DEFEAT = 4;
+
+	/* size of a record header: body length (int) + body CRC32 (int) */
+	private static final int HEADER_SIZE = 8;
+	/* maximum number of records written by a single batch */
+	private static final int MAX_BATCH = 1024;
+	/* time to wait for new records when idle (in milliseconds) */
+	private static final long IDLE_WAIT = 100;
+
+	/* encoded records waiting to be written */
+	private final LinkedBlockingQueue<byte[]> pending = new LinkedBlockingQueue<byte[]>();
+	/* journal file name, segments are named journalFile.1, journalFile.2, ... */
+	private final String journalFile;
+	/* number of the segment being written */
+	private int segmentNo;
+	/* segment being written, opened for appending - replaced by rotate */
+	private FileChannel channel;
+	/* lock for writing on / replacing the segment being written */
+	private final Object segmentLock = new Object();
+	/* milliseconds between two syncs to disk, 0 to sync every batch */
+	private final int syncInterval;
+	/* last sequence number assigned to a record */
+	private final AtomicLong seq;
+	/* journal closed, no more records are accepted */
+	private volatile boolean closed = false;
+
+	/* counters - records, bytes, batches written, syncs to disk */
+	private final AtomicLong records = new AtomicLong(0);
+	private final AtomicLong bytes = new AtomicLong(0);
+	private final AtomicLong batches = new AtomicLong(0);
+	private final AtomicLong syncs = new AtomicLong(0);
+	/* start time (for throughput) */
+	private final long startTime = System.currentTimeMillis();
+
+
+	/**
+	 * Open a journal for appending, after its valid records have been replayed - see replay.
+	 * @param journalFile journal file name.
+	 * @param segmentNo number of the segment to append to.
+	 * @param validLength length of the valid part of the segment, anything beyond is discarded.
+	 * @param lastSeq last sequence number found in the journal or in the restored users.
+	 * @param syncInterval milliseconds between two syncs to disk, 0 to sync every batch.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public Journal(String journalFile, int segmentNo, long validLength, long lastSeq, int syncInterval) throws IOException
+	{
+		this.journalFile = journalFile;
+		this.segmentNo = segmentNo;
+		this.channel = FileChannel.open(Paths.get(segmentName(journalFile, segmentNo)), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.channel.truncate(validLength);
+		this.channel.position(validLength);
+		this.seq = new AtomicLong(lastSeq);
+		this.syncInterval = syncInterval;
+		setDaemon(true);
+	}
+
+	/**
+	 * @param journalFile journal file name.
+	 * @param segmentNo segment number.
+	 * @return the file name of the segment.
+	 */
+	private static String segmentName(String journalFile, int segmentNo)
+	{
+		return journalFile + "." + segmentNo;
+	}
+
+	/**
+	 * Find the segments of a journal.
+	 * @param journalFile journal file name.
+	 * @return the segments files, by segment number.
+	 */
+	private static TreeMap<Integer,File> segments(String journalFile)
+	{
+		TreeMap<Integer,File> segments = new TreeMap<Integer,File>();
+		File journal = new File(journalFile).getAbsoluteFile();
+		String prefix = journal.getName() + ".";
+		File[] files = journal.getParentFile().listFiles();
+
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				if (!file.getName().startsWith(prefix))
+					continue;
+				try {segments.put(Integer.parseInt(file.getName().substring(prefix.length())), file);}
+				catch (NumberFormatException e) {/* not a segment */}
+			}
+		}
+		return segments;
+	}
+
+
+	/**
+	 * Record a new user registration.
+	 * @param user the new user.
+	 * @return the sequence number of the record.
+	 */
+	public long register(User user)
+	{
+		byte[] passwd = user.getPasswd();
+		return append(REGISTER, user.getName(), out -> {
+			out.writeShort(passwd.length);
+			out.write(passwd);
+		});
+	}
+
+	/**
+	 * Record a new game started by a user.
+	 * @param user the user.
+	 * @param word secret word of the game.
+	 * @return the sequence number of the record.
+	 */
+	public long start(User user, String word)
+	{
+		return append(START, user.getName(), out -> out.writeUTF(word));
+	}
+
+	/**
+	 * Record a game won by a user.
+	 * @param user the user.
+	 * @param guessNo number of attempts that took user to win.
+	 * @return the sequence number of the record.
+	 */
+	public long victory(User user, int guessNo)
+	{
+		return append(VICTORY, user.getName(), out -> out.writeInt(guessNo));
+	}
+
+	/**
+	 * Record a game lost by a user.
+	 * @param user the user.
+	 * @return the sequence number of the record.
+	 */
+	public long defeat(User user)
+	{
+		return append(DEFEAT, user.getName(), out -> {});
+	}
+
+
+	/**
+	 * Fields of a record following its type, sequence number and user name.
+	 */
+	private interface Fields
+	{
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Encode a record and queue it for the writer thread, without blocking.
+	 * @param type record type.
+	 * @param name user name.
+	 * @param fields type specific fields.
+	 * @return the sequence number of the record (the last one written if the journal is closed, as no record is).
+	 */
+	private long append(byte type, String name, Fields fields)
+	{
+		if (closed)
+			return seq.get();
+		long recordSeq = seq.incrementAndGet();
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(body);
+		try
+		{
+			out.writeInt(0); // length, set below
+			out.writeInt(0); // CRC32, set below
+			out.writeByte(type);
+			out.writeLong(recordSeq);
+			out.writeUTF(name);
+			fields.write(out);
+		}
+		catch (IOException e) {/* never thrown */}
+
+		byte[] record = body.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(record, HEADER_SIZE, record.length - HEADER_SIZE);
+		ByteBuffer.wrap(record).putInt(record.length - HEADER_SIZE).putInt((int) crc.getValue());
+
+		pending.add(record);
+		return recordSeq;
+	}
+
+	@Override
+	public void run()
+	{
+		ArrayList<byte[]> batch = new ArrayList<byte[]>(MAX_BATCH);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+		long lastSync = System.currentTimeMillis();
+		boolean unsynced = false;
+		byte[] first;
+
+		try
+		{
+			while (!closed || !pending.isEmpty())
+			{
+				/* wait for records, but not longer than the time left before the next sync */
+				long wait = (unsynced && syncInterval > 0) ? Math.max(1, lastSync + syncInterval - System.currentTimeMillis()) : IDLE_WAIT;
+				first = pending.poll(wait, TimeUnit.MILLISECONDS);
+
+				/* group commit: write every queued record with a single batch */
+				if (first != null)
+				{
+					batch.add(first);
+					pending.drainTo(batch, MAX_BATCH - 1);
+					buffer = write(batch, buffer);
+					batch.clear();
+					unsynced = true;
+				}
+
+				/* sync to disk every batch, or every syncInterval milliseconds */
+				if (unsynced && (syncInterval == 0 || System.currentTimeMillis() - lastSync >= syncInterval))
+				{
+					sync(false);
+					lastSync = System.currentTimeMillis();
+					unsynced = false;
+				}
+			}
+
+			/* last records written, close segment */
+			sync(true);
+		}
+		catch (IOException e)
+		{
+			System.err.println("FATAL ERROR: failure while writing users journal.");
+			System.exit(1);
+		}
+		catch (InterruptedException e)
+		{
+			System.err.println("FATAL ERROR: failure while waiting for users journal records.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Write a batch of records to the segment being written.
+	 * @param batch encoded records.
+	 * @param buffer buffer for gathering records.
+	 * @return the buffer to be used for next batches (grown if needed).
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private ByteBuffer write(ArrayList<byte[]> batch, ByteBuffer buffer) throws IOException
+	{
+		synchronized (segmentLock)
+		{
+			for (byte[] record : batch)
+			{
+				if (buffer.remaining() < record.length)
+					buffer = flush(buffer, record.length);
+				buffer.put(record);
+				bytes.addAndGet(record.length);
+			}
+			flush(buffer, 0);
+		}
+		records.addAndGet(batch.size());
+		batches.incrementAndGet();
+
+		return buffer;
+	}
+
+	/**
+	 * Sync the segment being written to disk.
+	 * @param close if true, close the segment too.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private void sync(boolean close) throws IOException
+	{
+		synchronized (segmentLock)
+		{
+			channel.force(false);
+			syncs.incrementAndGet();
+			if (close)
+				channel.close();
+		}
+	}
+
+	/**
+	 * Write buffered records to the segment being written.
+	 * @param buffer buffer holding encoded records.
+	 * @param needed room needed for the next record.
+	 * @return an empty buffer with room for the next record.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private ByteBuffer flush(ByteBuffer buffer, int needed) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+
+		if (buffer.capacity() < needed)
+			buffer = ByteBuffer.allocateDirect(needed);
+		return buffer;
+	}
+
+	/**
+	 * Write and sync all the queued records, then stop accepting new ones.
+	 * @throws InterruptedException if interrupted while waiting for the writer thread.
+	 */
+	public void close() throws InterruptedException
+	{
+		closed = true;
+		join();
+	}
+
+	/**
+	 * Start writing a new segment (unless the journal is closed), so that the previous ones can be deleted once the
+	 * users they refer to have been backed up - see Snapshotter.
+	 * Every record in the previous segments refers to a change already applied to its user.
+	 * @return the number of the last segment that can be deleted after the backup.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public int rotate() throws IOException
+	{
+		synchronized (segmentLock)
+		{
+			if (!channel.isOpen())
+				return segmentNo;
+
+			channel.force(false);
+			channel.close();
+			channel = FileChannel.open(Paths.get(segmentName(journalFile, segmentNo + 1)), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			return segmentNo++;
+		}
+	}
+
+	/**
+	 * Delete the segments covered by a users backup.
+	 * @param lastSegmentNo number of the last segment to delete (as returned by rotate).
+	 */
+	public void deleteSegments(int lastSegmentNo)
+	{
+		for (File segment : segments(journalFile).headMap(lastSegmentNo, true).values())
+			segment.delete();
+	}
+
+	/**
+	 * @return a printable summary of the journal counters.
+	 */
+	public String getCounters()
+	{
+		long seconds = Math.max(1, (System.currentTimeMillis() - startTime) / 1000);
+
+		return "journal: records " + records.get() +
+			", bytes " + bytes.get() +
+			", batches " + batches.get() +
+			", syncs " + syncs.get() +
+			", records/s " + (records.get() / seconds) +
+			", records/batch " + ((batches.get() == 0) ? 0 : (records.get() / batches.get()));
+	}
+
+
+	/**
+	 * Replay the valid records of a journal (all its segments, in order) on a users database.
+	 * Records already covered by the users database (see User.getSeq) are skipped, replay stops at the first torn or
+	 * corrupted record (a crash while writing).
+	 * @param journalFile journal file name.
+	 * @param usersDB users database, as restored from users backup file.
+	 * @param wordleMaxAttempts maximum attempts for a user to guess secret word (for registered users).
+	 * @return {segment to append to, length of its valid part, last sequence number found}.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static long[] replay(String journalFile, UserRepository usersDB, int wordleMaxAttempts) throws IOException
+	{
+		/* restored users may be more recent than the journal */
+		long[] lastSeq = {0};
+		usersDB.forEach(user -> lastSeq[0] = Math.max(lastSeq[0], user.getSeq()));
+
+		TreeMap<Integer,File> segments = segments(journalFile);
+		if (segments.isEmpty())
+			return new long[] {1, 0, lastSeq[0]};
+
+		for (Integer segmentNo : segments.keySet())
+		{
+			File segment = segments.get(segmentNo);
+			long validLength = replaySegment(segment, usersDB, wordleMaxAttempts, lastSeq);
+
+			/* append to the last segment, after its valid records */
+			if (validLength == segment.length() && segmentNo < segments.lastKey())
+				continue;
+			if (validLength < segment.length())
+				System.out.println("Discarded " + (segment.length() - validLength) + " bytes of incomplete users journal records.");
+			if (segmentNo == segments.lastKey())
+				return new long[] {segmentNo, validLength, lastSeq[0]};
+
+			/* corrupted segment (not the last one): following segments can't be trusted, start a new one */
+			System.out.println("Users journal segment " + segment.getName() + " is corrupted, following segments ignored.");
+			break;
+		}
+
+		return new long[] {segments.lastKey() + 1, 0, lastSeq[0]};
+	}
+
+	/**
+	 * Replay the valid records of a journal segment.
+	 * @param segment segment file.
+	 * @param usersDB users database.
+	 * @param wordleMaxAttempts maximum attempts for a user to guess secret word (for registered users).
+	 * @param lastSeq last sequence number found, updated with the records of this segment.
+	 * @return length of the valid part of the segment.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static long replaySegment(File segment, UserRepository usersDB, int wordleMaxAttempts, long[] lastSeq) throws IOException
+	{
+		long validLength = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment), 1 << 16));
+		CRC32 crc = new CRC32();
+		try
+		{
+			while (true)
+			{
+				/* read and check a whole record */
+				int length;
+				try {length = in.readInt();}
+				catch (EOFException e) {break;}
+				if (length <= 0 || length > (1 << 20))
+					break;
+				int checksum = in.readInt();
+				byte[] body = new byte[length];
+				in.readFully(body);
+				crc.reset();
+				crc.update(body);
+				if ((int) crc.getValue() != checksum)
+					break;
+
+				/* apply it (a record of unknown type is discarded with the rest of the segment, like a torn one) */
+				long recordSeq = apply(new DataInputStream(new ByteArrayInputStream(body)), usersDB, wordleMaxAttempts);
+				if (recordSeq < 0)
+				{
+					System.out.println("Unknown users journal record type at offset " + validLength + " of segment " + segment.getName() + ".");
+					break;
+				}
+				lastSeq[0] = Math.max(lastSeq[0], recordSeq);
+				validLength += HEADER_SIZE + length;
+			}
+		}
+		catch (EOFException e) {/* torn record, discarded */}
+		finally
+		{
+			in.close();
+		}
+
+		return validLength;
+	}
+
+	/**
+	 * Apply a single record to a users database, unless already covered by it.
+	 * @param in record body.
+	 * @param usersDB users database.
+	 * @param wordleMaxAttempts maximum attempts for a user to guess secret word (for registered users).
+	 * @return the sequence number of the record, -1 if its type is unknown (record not applied).
+	 * @throws IOException if the record is malformed.
+	 */
+	private static long apply(DataInputStream in, UserRepository usersDB, int wordleMaxAttempts) throws IOException
+	{
+		byte type = in.readByte();
+		long recordSeq = in.readLong();
+		String name = in.readUTF();
+		User user = usersDB.get(name);
+
+		if (type == REGISTER)
+		{
+			byte[] passwd = new byte[in.readShort()];
+			in.readFully(passwd);
+			if (user == null)
+			{
+				user = new User(name, passwd, wordleMaxAttempts);
+				user.setSeq(recordSeq);
+				usersDB.restore(user);
+			}
+			return recordSeq;
+		}
+
+		if (type != START && type != VICTORY && type != DEFEAT)
+			return -1;
+
+		/* records of unknown users, or already covered by users backup */
+		if (user == null || recordSeq <= user.getSeq())
+			return recordSeq;
+
+		if (type == START)
+			user.setLastWord(in.readUTF());
+		else if (type == VICTORY)
+		{
+			/* attempts out of range (e.g. WORDLE_MaxAttempts lowered since) are counted in the nearest valid number */
+			int guessNo = in.readInt();
+			int maxAttempts = user.getStats().getMaxAttempts();
+			if (guessNo < 1 || guessNo > maxAttempts)
+			{
+				int validGuessNo = Math.max(1, Math.min(guessNo, maxAttempts));
+				System.out.println("Users journal victory of " + name + " in " + guessNo + " attempts counted in " + validGuessNo + " attempts.");
+				guessNo = validGuessNo;
+			}
+			user.getStats().addVictory(guessNo);
+		}
+		else
+			user.getStats().addDefeat();
+
+		user.setSeq(recordSeq);
+		usersDB.update(user);
+		return recordSeq;
+	}
+}
@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.util.Arrays;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+
+public class JsonCodecs
+{
+	/* encodes and decodes server messages, shared by server and client (Share and UserStats by the streaming adapters below) */
+	public static final Gson gson = new GsonBuilder()
+		.registerTypeAdapter(Share.class, new ShareAdapter().nullSafe())
+		.registerTypeAdapter(UserStats.class, new UserStatsAdapter().nullSafe())
+		.create();
+
+
+	/**
+	 * {"user":..,"gameNo":..,"attemptsNo":..,"scheme":[..],"wordleMaxAttempts":..}
+	 * The scheme is sent as rendered hints (null for attempts not made), as clients that don't know packed hints
+	 * display it as it is - see Hint.
+	 */
+	private static class ShareAdapter extends TypeAdapter<Share>
+	{
+		@Override
+		public void write(JsonWriter out, Share share) throws IOException
+		{
+			int[] scheme = share.getGameScheme();
+
+			out.beginObject();
+			out.name("user").value(share.getUser());
+			out.name("gameNo").value(share.getGame());
+			out.name("attemptsNo").value(share.getAttempts());
+			out.name("scheme").beginArray();
+			for (int i = 0; i < share.getMaxAttempts(); i++)
+			{
+				if (i < scheme.length)
+					out.value(Hint.render(scheme[i]));
+				else
+					out.nullValue();
+			}
+			out.endArray();
+			out.name("wordleMaxAttempts").value(share.getMaxAttempts());
+			out.endObject();
+		}
+
+		@Override
+		public Share read(JsonReader in) throws IOException
+		{
+			String user = null;
+			int gameNo = 0;
+			int attemptsNo = 0;
+			int[] scheme = new int[0];
+			int maxAttempts = 0;
+
+			in.beginObject();
+			while (in.hasNext())
+			{
+				switch (in.nextName())
+				{
+					case "user":
+						user = (in.peek() == JsonToken.NULL) ? nextNull(in) : in.nextString();
+						break;
+					case "gameNo":
+						gameNo = nextInt(in);
+						break;
+					case "attemptsNo":
+						attemptsNo = nextInt(in);
+						break;
+					case "scheme":
+						scheme = nextHints(in);
+						break;
+					case "wordleMaxAttempts":
+						maxAttempts = nextInt(in);
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+
+			if (attemptsNo < 0 || attemptsNo > scheme.length)
+				throw new JsonSyntaxException("bad attempts number at " + in.getPath());
+			return new Share(user, gameNo, attemptsNo, scheme, maxAttempts);
+		}
+	}
+
+	/**
+	 * {"gamesNo":..,"victories":..,"defeats":..,"victoriesPerc":..,"lastStreak":..,"maxStreak":..,"guesses":[..],
+	 *  "guessDistr":[..],"lastGuessNo":..}
+	 * Derived values (gamesNo, victoriesPerc, guessDistr) are written for clients, and ignored when read.
+	 */
+	private static class UserStatsAdapter extends TypeAdapter<UserStats>
+	{
+		@Override
+		public void write(JsonWriter out, UserStats stats) throws IOException
+		{
+			out.beginObject();
+			out.name("gamesNo").value(stats.getGames());
+			out.name("victories").value(stats.getVictories());
+			out.name("defeats").value(stats.getDefeats());
+			out.name("victoriesPerc").value(stats.getVictoriesPerc());
+			out.name("lastStreak").value(stats.getLastStreak());
+			out.name("maxStreak").value(stats.getMaxStreak());
+			out.name("guesses").beginArray();
+			for (int guesses : stats.getGuesses())
+				out.value(guesses);
+			out.endArray();
+			out.name("guessDistr").beginArray();
+			for (float perc : stats.getGuessDistribution())
+				out.value(perc);
+			out.endArray();
+			out.name("lastGuessNo").value(stats.getLastGuessNo());
+			out.endObject();
+		}
+
+		@Override
+		public UserStats read(JsonReader in) throws IOException
+		{
+			int victories = 0;
+			int defeats = 0;
+			int lastStreak = 0;
+			int maxStreak = 0;
+			int[] guesses = new int[0];
+			int lastGuessNo = 0;
+
+			in.beginObject();
+			while (in.hasNext())
+			{
+				switch (in.nextName())
+				{
+					case "victories":
+						victories = nextInt(in);
+						break;
+					case "defeats":
+						defeats = nextInt(in);
+						break;
+					case "lastStreak":
+						lastStreak = nextInt(in);
+						break;
+					case "maxStreak":
+						maxStreak = nextInt(in);
+						break;
+					case "guesses":
+						guesses = nextInts(in);
+						break;
+					case "lastGuessNo":
+						lastGuessNo = nextInt(in);
+						break;
+					default:
+						in.skipValue();
+				}
+			}
+			in.endObject();
+
+			return new UserStats(victories, defeats, lastStreak, maxStreak, lastGuessNo, guesses);
+		}
+	}
+
+
+	/**
+	 * @param in json reader.
+	 * @return the next value, as an integer.
+	 * @throws JsonSyntaxException if the next value is not an integer (like reflective adapters do).
+	 */
+	private static int nextInt(JsonReader in) throws IOException
+	{
+		try {return in.nextInt();}
+		catch (NumberFormatException e) {throw new JsonSyntaxException(e);}
+	}
+
+	/**
+	 * @param in json reader.
+	 * @return the next value, an array of integers.
+	 */
+	private static int[] nextInts(JsonReader in) throws IOException
+	{
+		int[] values = new int[16];
+		int size = 0;
+
+		in.beginArray();
+		while (in.hasNext())
+		{
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = nextInt(in);
+		}
+		in.endArray();
+
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * @param in json reader.
+	 * @return the next value, an array of rendered hints (null ones are read as 0), packed.
+	 * @throws JsonSyntaxException if a hint is not a rendered one.
+	 */
+	private static int[] nextHints(JsonReader in) throws IOException
+	{
+		int[] hints = new int[16];
+		int size = 0;
+
+		in.beginArray();
+		while (in.hasNext())
+		{
+			if (size == hints.length)
+				hints = Arrays.copyOf(hints, size * 2);
+			if (in.peek() == JsonToken.NULL)
+			{
+				in.nextNull();
+				hints[size++] = 0;
+				continue;
+			}
+			int hint = Hint.parse(in.nextString());
+			if (hint < 0)
+				throw new JsonSyntaxException("bad hint at " + in.getPath());
+			hints[size++] = hint;
+		}
+		in.endArray();
+
+		return Arrays.copyOf(hints, size);
+	}
+
+	/**
+	 * @param in json reader.
+	 * @return null, once read.
+	 */
+	private static String nextNull(JsonReader in) throws IOException
+	{
+		in.nextNull();
+		return null;
+	}
+}
@@ -0,0 +1,315 @@
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class Leaderboard
+{
+	/* leaderboards */
+	public static final int WIN_RATE = 0;
+	public static final int MAX_STREAK = 1;
+	public static final int AVG_ATTEMPTS = 2;
+	/* leaderboards names */
+	private static final String[] NAMES = {"Victory rate", "Longest streak", "Average attempts"};
+	/* scores are kept as integers, in hundredths (but for streaks) */
+	private static final float[] SCALES = {100f, 1f, -100f};
+
+	/* the leaderboards (order statistics trees, see Board), each one guarded by its own lock (taken while holding the lock of the updated user) */
+	private final Board[] boards = {new Board(), new Board(), new Board()};
+	/* minimum number of games (victories for AVG_ATTEMPTS) to be ranked by rate */
+	private final int minGames;
+	/* number of top players returned */
+	private final int topSize;
+
+	/* counters - leaderboards updates, and their total time (nanoseconds) */
+	private final LongAdder updates = new LongAdder();
+	private final LongAdder updateTime = new LongAdder();
+
+
+	/**
+	 * Order statistics tree of (score, name): higher scores first, then names in alphabetical order.
+	 */
+	private static class Board
+	{
+		/* root of the treap */
+		private Node root;
+		/* current score of each ranked user */
+		private final HashMap<String,Long> scores = new HashMap<String,Long>();
+
+		/**
+		 * Set the score of a user.
+		 * @param name user name.
+		 * @param score new score, null if the user is not to be ranked.
+		 */
+		private void set(String name, Long score)
+		{
+			Long previous = (score == null) ? scores.remove(name) : scores.put(name, score);
+			if (score != null && score.equals(previous))
+				return;
+
+			if (previous != null)
+				root = remove(root, previous, name);
+			if (score != null)
+				root = insert(root, new Node(score, name));
+		}
+
+		/**
+		 * @param name user name.
+		 * @return rank of the user (1 for the best), 0 if not ranked.
+		 */
+		private int rank(String name)
+		{
+			Long score = scores.get(name);
+			if (score == null)
+				return 0;
+
+			int rank = 0;
+			Node node = root;
+			while (node != null)
+			{
+				int order = compare(score, name, node);
+				if (order < 0)
+					node = node.left;
+				else
+				{
+					rank += size(node.left) + 1;
+					if (order == 0)
+						return rank;
+					node = node.right;
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * @param k number of top users.
+		 * @return the top k users, best first.
+		 */
+		private Node[] top(int k)
+		{
+			Node[] top = new Node[Math.min(k, size(root))];
+			ArrayDeque<Node> path = new ArrayDeque<Node>();
+			Node node = root;
+			int i = 0;
+			while (i < top.length)
+			{
+				for (; node != null; node = node.left)
+					path.push(node);
+				node = path.pop();
+				top[i++] = node;
+				node = node.right;
+			}
+			return top;
+		}
+
+		private static Node insert(Node tree, Node node)
+		{
+			if (tree == null)
+				return node;
+			if (node.priority > tree.priority)
+			{
+				split(tree, node);
+				node.update();
+				return node;
+			}
+			if (compare(node.score, node.name, tree) < 0)
+				tree.left = insert(tree.left, node);
+			else
+				tree.right = insert(tree.right, node);
+			tree.update();
+			return tree;
+		}
+
+		/**
+		 * Split a tree in the nodes before a node (its left subtree) and after it (its right subtree).
+		 */
+		private static void split(Node tree, Node node)
+		{
+			if (tree == null)
+			{
+				node.left = null;
+				node.right = null;
+				return;
+			}
+			if (compare(node.score, node.name, tree) < 0)
+			{
+				split(tree.left, node);
+				tree.left = node.right;
+				tree.update();
+				node.right = tree;
+			}
+			else
+			{
+				split(tree.right, node);
+				tree.right = node.left;
+				tree.update();
+				node.left = tree;
+			}
+		}
+
+		private static Node remove(Node tree, long score, String name)
+		{
+			if (tree == null)
+				return null;
+			int order = compare(score, name, tree);
+			if (order == 0)
+				return merge(tree.left, tree.right);
+			if (order < 0)
+				tree.left = remove(tree.left, score, name);
+			else
+				tree.right = remove(tree.right, score, name);
+			tree.update();
+			return tree;
+		}
+
+		private static Node merge(Node left, Node right)
+		{
+			if (left == null)
+				return right;
+			if (right == null)
+				return left;
+			if (left.priority > right.priority)
+			{
+				left.right = merge(left.right, right);
+				left.update();
+				return left;
+			}
+			right.left = merge(left, right.left);
+			right.update();
+			return right;
+		}
+
+		private static int compare(long score, String name, Node node)
+		{
+			if (score != node.score)
+				return (score > node.score) ? -1 : 1;
+			return name.compareTo(node.name);
+		}
+
+		private static int size(Node node)
+		{
+			return (node == null) ? 0 : node.size;
+		}
+	}
+
+	/**
+	 * Treap node.
+	 */
+	private static class Node
+	{
+		private final long score;
+		private final String name;
+		private final int priority = ThreadLocalRandom.current().nextInt();
+		/* nodes in the subtree */
+		private int size = 1;
+		private Node left;
+		private Node right;
+
+		private Node(long score, String name)
+		{
+			this.score = score;
+			this.name = name;
+		}
+
+		private void update()
+		{
+			size = Board.size(left) + Board.size(right) + 1;
+		}
+	}
+
+
+	/**
+	 * Instantiate new (empty) leaderboards.
+	 * @param minGames minimum number of games (victories for average attempts) to be ranked by rate.
+	 * @param topSize number of top players returned by getRanking.
+	 */
+	public Leaderboard(int minGames, int topSize)
+	{
+		this.minGames = minGames;
+		this.topSize = topSize;
+	}
+
+	/**
+	 * Update the leaderboards with the statistics of a user: ranked by rate of victories after minGames games, by
+	 * longest streak once won, by average attempts after minGames victories.
+	 * To be called while holding the user lock, so that updates of the same user are applied in order.
+	 * @param user the user.
+	 */
+	public void update(User user)
+	{
+		long start = System.nanoTime();
+		UserStats stats = user.getStats();
+		int games = stats.getGames();
+		int victories = stats.getVictories();
+
+		Long winRate = (games >= minGames && games > 0) ? (long) victories * 10000 / games : null;
+		Long maxStreak = (victories > 0) ? (long) stats.getMaxStreak() : null;
+		Long avgAttempts = null;
+		if (victories >= minGames && victories > 0)
+		{
+			int[] guesses = stats.getGuesses();
+			long attempts = 0;
+			for (int i = 0; i < guesses.length; i++)
+				attempts += (long) (i + 1) * guesses[i];
+			avgAttempts = -(attempts * 100 / victories);
+		}
+
+		set(WIN_RATE, user.getName(), winRate);
+		set(MAX_STREAK, user.getName(), maxStreak);
+		set(AVG_ATTEMPTS, user.getName(), avgAttempts);
+
+		updates.increment();
+		updateTime.add(System.nanoTime() - start);
+	}
+
+	private void set(int board, String name, Long score)
+	{
+		synchronized (boards[board]) {boards[board].set(name, score);}
+	}
+
+	/**
+	 * @param board the leaderboard (WIN_RATE, MAX_STREAK or AVG_ATTEMPTS).
+	 * @param name name of the requesting user.
+	 * @return the top players of the leaderboard, with the rank of the requesting user.
+	 */
+	public Ranking getRanking(int board, String name)
+	{
+		Board leaderboard = boards[board];
+		Node[] top;
+		int rank;
+		Long score;
+		int players;
+		synchronized (leaderboard)
+		{
+			top = leaderboard.top(topSize);
+			rank = leaderboard.rank(name);
+			score = leaderboard.scores.get(name);
+			players = leaderboard.scores.size();
+		}
+
+		String[] names = new String[top.length];
+		float[] scores = new float[top.length];
+		for (int i = 0; i < top.length; i++)
+		{
+			names[i] = top[i].name;
+			scores[i] = top[i].score / SCALES[board];
+		}
+		return new Ranking(NAMES[board], names, scores, rank, (score == null) ? 0 : score / SCALES[board], players);
+	}
+
+	/**
+	 * @return a printable summary of the leaderboards counters.
+	 */
+	public String getCounters()
+	{
+		int[] ranked = new int[boards.length];
+		for (int i = 0; i < boards.length; i++)
+			synchronized (boards[i]) {ranked[i] = boards[i].scores.size();}
+
+		long updatesNo = updates.sum();
+		return "leaderboards: ranked " + ranked[WIN_RATE] + "/" + ranked[MAX_STREAK] + "/" + ranked[AVG_ATTEMPTS] +
+			", updates " + updatesNo +
+			", avg update time " + ((updatesNo == 0) ? 0 : updateTime.sum() / updatesNo) + " ns";
+	}
+}
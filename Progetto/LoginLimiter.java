@@ -0,0 +1,220 @@
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class LoginLimiter
+{
+	/* login attempts buckets, by user name and by remote address (across connections, reconnecting gives no new attempts) */
+	private final Buckets users;
+	private final Buckets addresses;
+
+	/* counters - attempts allowed, throttled because of the user name, throttled because of the remote address */
+	private final LongAdder allowed = new LongAdder();
+	private final LongAdder userThrottled = new LongAdder();
+	private final LongAdder addressThrottled = new LongAdder();
+
+
+	/**
+	 * Token buckets, by key.
+	 */
+	private static class Buckets
+	{
+		/* nanoseconds for a token to be given back */
+		private final long interval;
+		/* maximum delay of a bucket in nanoseconds (burst size, in intervals) */
+		private final long tolerance;
+		/* maximum number of buckets kept: full ones are swept to make room, new keys are refused if none is freed */
+		private final int maxEntries;
+		/* time at which each bucket will be full again (generic cell rate algorithm): full buckets are the same as missing ones */
+		private final ConcurrentHashMap<String,AtomicLong> buckets = new ConcurrentHashMap<String,AtomicLong>();
+		/* a thread is sweeping full buckets */
+		private final AtomicBoolean sweeping = new AtomicBoolean(false);
+		/* time before which no other sweep is done (if a sweep freed no room, the next ones would not either) */
+		private volatile long nextSweep = System.nanoTime();
+		/* counters - full buckets swept, new keys refused for lack of room */
+		private final LongAdder swept = new LongAdder();
+		private final LongAdder refused = new LongAdder();
+
+		/**
+		 * @param perMinute tokens given back per minute.
+		 * @param burst bucket size.
+		 * @param maxEntries maximum number of buckets kept.
+		 */
+		private Buckets(int perMinute, int burst, int maxEntries)
+		{
+			this.interval = 60_000_000_000L / perMinute;
+			this.tolerance = interval * burst;
+			this.maxEntries = maxEntries;
+		}
+
+		/**
+		 * Take a token from the bucket of a key.
+		 * A key with no bucket is refused if maxEntries buckets are kept and sweeping frees none (concurrent
+		 * acquires may still go past maxEntries, by at most one bucket each).
+		 * @param key the key.
+		 * @param now current time (nanoseconds).
+		 * @return true if a token was taken, false if the bucket is empty or there is no room for it.
+		 */
+		private boolean acquire(String key, long now)
+		{
+			AtomicLong bucket = buckets.get(key);
+			if (bucket == null)
+			{
+				if (buckets.size() >= maxEntries)
+				{
+					sweep(now);
+					if (buckets.size() >= maxEntries)
+					{
+						refused.increment();
+						return false;
+					}
+				}
+				bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+			}
+
+			while (true)
+			{
+				long full = bucket.get();
+				long next = Math.max(full, now) + interval;
+				if (next - now > tolerance)
+					return false;
+				if (bucket.compareAndSet(full, next))
+					return true;
+			}
+		}
+
+		/**
+		 * Give back a token taken from the bucket of a key.
+		 * If the bucket has been swept meanwhile, its key already has a full bucket again.
+		 * @param key the key.
+		 */
+		private void release(String key)
+		{
+			AtomicLong bucket = buckets.get(key);
+			if (bucket != null)
+				bucket.addAndGet(-interval);
+		}
+
+		/**
+		 * @param key the key.
+		 * @param now current time (nanoseconds).
+		 * @return true if the bucket of a key is empty.
+		 */
+		private boolean isEmpty(String key, long now)
+		{
+			AtomicLong bucket = buckets.get(key);
+			return bucket != null && Math.max(bucket.get(), now) + interval - now > tolerance;
+		}
+
+		/**
+		 * Remove full buckets, by one thread at a time (the others don't wait) and at most once per interval.
+		 * A bucket which is taken a token meanwhile may be removed as well: its key just gets a full bucket again.
+		 * @param now current time (nanoseconds).
+		 */
+		private void sweep(long now)
+		{
+			if (now - nextSweep < 0 || !sweeping.compareAndSet(false, true))
+				return;
+
+			try
+			{
+				Iterator<Map.Entry<String,AtomicLong>> entries = buckets.entrySet().iterator();
+				while (entries.hasNext())
+				{
+					if (entries.next().getValue().get() - now <= 0)
+					{
+						entries.remove();
+						swept.increment();
+					}
+				}
+			}
+			finally
+			{
+				nextSweep = now + interval;
+				sweeping.set(false);
+			}
+		}
+	}
+
+
+	/**
+	 * Instantiate a new login limiter.
+	 * @param userRate login attempts per minute for a user name.
+	 * @param userBurst login attempts in a row for a user name.
+	 * @param addressRate login attempts per minute from a remote address.
+	 * @param addressBurst login attempts in a row from a remote address.
+	 * @param maxEntries maximum number of user names (and of remote addresses) tracked.
+	 */
+	public LoginLimiter(int userRate, int userBurst, int addressRate, int addressBurst, int maxEntries)
+	{
+		this.users = new Buckets(userRate, userBurst, maxEntries);
+		this.addresses = new Buckets(addressRate, addressBurst, maxEntries);
+	}
+
+	/**
+	 * Tell if login attempts are currently throttled, without taking any token (when choosing a user name).
+	 * @param name user name (null if none).
+	 * @param address client remote address (null if unknown).
+	 * @return true if login attempts for the user name or from the remote address are throttled.
+	 */
+	public boolean isThrottled(String name, InetAddress address)
+	{
+		long now = System.nanoTime();
+		if (address != null && addresses.isEmpty(address.getHostAddress(), now))
+		{
+			addressThrottled.increment();
+			return true;
+		}
+		if (name != null && users.isEmpty(name, now))
+		{
+			userThrottled.increment();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Take a login attempt (a password to verify) for a user name from a remote address.
+	 * An attempt refused because of the user name does not count against the remote address.
+	 * @param name user name.
+	 * @param address client remote address (null if unknown).
+	 * @return true if the attempt is allowed, false if it is throttled.
+	 */
+	public boolean acquire(String name, InetAddress address)
+	{
+		long now = System.nanoTime();
+		if (address != null && !addresses.acquire(address.getHostAddress(), now))
+		{
+			addressThrottled.increment();
+			return false;
+		}
+		if (!users.acquire(name, now))
+		{
+			if (address != null)
+				addresses.release(address.getHostAddress());
+			userThrottled.increment();
+			return false;
+		}
+		allowed.increment();
+		return true;
+	}
+
+	/**
+	 * @return a printable summary of the login limiter counters.
+	 */
+	public String getCounters()
+	{
+		return "login limiter: allowed " + allowed.sum() +
+			", throttled by user " + userThrottled.sum() +
+			", throttled by address " + addressThrottled.sum() +
+			", tracked users " + users.buckets.size() +
+			", tracked addresses " + addresses.buckets.size() +
+			", swept " + (users.swept.sum() + addresses.swept.sum()) +
+			", refused (too many tracked) " + (users.refused.sum() + addresses.refused.sum());
+	}
+}
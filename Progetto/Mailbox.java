@@ -0,0 +1,163 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+
+public class Mailbox implements Runnable
+{
+	/* maximum tasks run in a row, before giving the pool thread back to other connections */
+	private static final int BATCH_SIZE = 16;
+
+	/* tasks waiting to be run, in order */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	/* true while this mailbox is queued on or running in the executor */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	/* executor running the tasks */
+	private Executor executor;
+	/* the running task asked to suspend this mailbox - accessed by the running thread only */
+	private boolean suspending = false;
+	/* true while this mailbox is suspended, waiting for a continuation - see suspend */
+	private final AtomicBoolean parked = new AtomicBoolean(false);
+	/* continuation of the suspended task, to be run before any other task */
+	private final AtomicReference<Runnable> continuation = new AtomicReference<Runnable>();
+
+
+	/**
+	 * Instantiate a new mailbox, running its tasks one at a time and in order on the given executor.
+	 * @param executor executor running the tasks.
+	 */
+	public Mailbox(Executor executor)
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * Append a task, to be run after all the previously submitted ones.
+	 * @param task task to run.
+	 */
+	public void submit(Runnable task)
+	{
+		tasks.add(task);
+		schedule();
+	}
+
+	/**
+	 * Run a task directly on the calling thread if no other task of this mailbox is pending or running
+	 * and the task is cheap enough, otherwise append it like submit().
+	 * Must not be called concurrently with submit() (tasks of a client are submitted by its reactor only).
+	 * @param task task to run.
+	 * @param cheap tells if the task can run inline, evaluated while no other task of this mailbox can run.
+	 */
+	public void runOrSubmit(Runnable task, BooleanSupplier cheap)
+	{
+		/* if mailbox is busy, keep ordering */
+		if (!tasks.isEmpty() || !scheduled.compareAndSet(false, true))
+		{
+			submit(task);
+			return;
+		}
+
+		/* mailbox is now owned by the calling thread */
+		if (cheap.getAsBoolean())
+		{
+			boolean owned = true;
+			try {owned = runTask(task);}
+			finally
+			{
+				if (owned)
+				{
+					scheduled.set(false);
+					if (!tasks.isEmpty())
+						schedule();
+				}
+			}
+			return;
+		}
+
+		/* hand the owned mailbox to the executor */
+		tasks.add(task);
+		executor.execute(this);
+	}
+
+	/**
+	 * Suspend this mailbox once the running task returns: no other task is run until the task continuation is
+	 * passed to resume, typically by another thread the task handed some work to.
+	 * To be called by the running task only.
+	 */
+	public void suspend()
+	{
+		suspending = true;
+	}
+
+	/**
+	 * Resume this mailbox suspended by suspend, running the given continuation before any other task.
+	 * @param task continuation of the suspended task (it may suspend this mailbox again).
+	 */
+	public void resume(Runnable task)
+	{
+		continuation.set(task);
+		if (parked.compareAndSet(true, false))
+			executor.execute(this);
+	}
+
+	/**
+	 * Run a task, and its continuations while it suspends this mailbox and they are already available.
+	 * @param task the task.
+	 * @return true if the calling thread still owns this mailbox, false if it is suspended (and owned by resume).
+	 */
+	private boolean runTask(Runnable task)
+	{
+		while (true)
+		{
+			task.run();
+			if (!suspending)
+				return true;
+			suspending = false;
+
+			/* park, unless the continuation arrived meanwhile (then either this thread or resume takes it over) */
+			parked.set(true);
+			if (continuation.get() == null || !parked.compareAndSet(true, false))
+				return false;
+			task = continuation.getAndSet(null);
+		}
+	}
+
+	/**
+	 * Hand this mailbox to the executor, unless it is already there.
+	 */
+	private void schedule()
+	{
+		if (scheduled.compareAndSet(false, true))
+			executor.execute(this);
+	}
+
+	@Override
+	public void run()
+	{
+		boolean owned = true;
+		Runnable task = continuation.getAndSet(null);
+		try
+		{
+			/* continuation of a suspended task first */
+			if (task != null)
+				owned = runTask(task);
+			for (int i = 0; owned && i < BATCH_SIZE && (task = tasks.poll()) != null; i++)
+				owned = runTask(task);
+		}
+		finally
+		{
+			/* a suspended mailbox stays scheduled, until resumed */
+			if (owned)
+			{
+				scheduled.set(false);
+
+				/* if tasks have been submitted meanwhile (or batch ended), run them later */
+				if (!tasks.isEmpty())
+					schedule();
+			}
+		}
+	}
+}
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+public class MappedWords
+{
+	/* length of each word (in bytes) */
+	private int wordLength;
+	/* size of each record: word followed by \n */
+	private int recordSize;
+	/* number of words in the file */
+	private long wordsQty;
+	/* records held by each mapped segment (a single mapping cannot exceed 2GB) */
+	private long recordsPerSegment;
+	/* read-only mappings of the file, accessed with absolute gets only (thread-safe) */
+	private MappedByteBuffer[] segments;
+
+
+	/**
+	 * Memory-map a sorted words file, and check it once (words are drawn and compared in place afterwards).
+	 * @param wordsChannel channel of the words file, one word per line.
+	 * @param wordLength length of each word (in bytes).
+	 * @throws IOException if an I/O error occurs, or if the words file contains illegal words or is not sorted.
+	 */
+	public MappedWords(FileChannel wordsChannel, int wordLength) throws IOException
+	{
+		this.wordLength = wordLength;
+		this.recordSize = wordLength + 1; // beware of \n
+		this.wordsQty = wordsChannel.size() / recordSize;
+		if (wordsQty == 0)
+			throw new IOException("empty words file");
+
+		/* map the file in segments made of whole records */
+		recordsPerSegment = Integer.MAX_VALUE / recordSize;
+		segments = new MappedByteBuffer[(int) ((wordsQty + recordsPerSegment - 1) / recordsPerSegment)];
+		for (int i = 0; i < segments.length; i++)
+		{
+			long first = i * recordsPerSegment;
+			long records = Math.min(recordsPerSegment, wordsQty - first);
+			segments[i] = wordsChannel.map(FileChannel.MapMode.READ_ONLY, first * recordSize, records * recordSize);
+		}
+
+		validate();
+	}
+
+	/**
+	 * Check that every word is made of lowercase letters only, followed by \n, and that words are sorted
+	 * (a single sequential scan of the file, done at startup).
+	 * @throws IOException if the words file contains illegal words or is not sorted.
+	 */
+	private void validate() throws IOException
+	{
+		for (long index = 0; index < wordsQty; index++)
+		{
+			MappedByteBuffer segment = segments[(int) (index / recordsPerSegment)];
+			int offset = (int) (index % recordsPerSegment) * recordSize;
+			byte c;
+			for (int i = 0; i < wordLength; i++)
+			{
+				c = segment.get(offset + i);
+				if (c < 'a' || c > 'z')
+					throw new IOException("illegal word at line " + (index+1));
+			}
+			if (segment.get(offset + wordLength) != '\n')
+				throw new IOException("illegal word at line " + (index+1));
+			if (index > 0 && compare(index - 1, index) > 0)
+				throw new IOException("words file is not sorted (line " + (index+1) + ")");
+		}
+	}
+
+	/* wordsQty */
+	public long size() {return wordsQty;}
+
+	/**
+	 * Get a word.
+	 * @param index index of the word in the file.
+	 * @return the word as a String.
+	 */
+	public String get(long index)
+	{
+		MappedByteBuffer segment = segments[(int) (index / recordsPerSegment)];
+		int offset = (int) (index % recordsPerSegment) * recordSize;
+		char[] word = new char[wordLength];
+		for (int i = 0; i < wordLength; i++)
+			word[i] = (char) (segment.get(offset + i) & 0xFF);
+		return new String(word);
+	}
+
+	/**
+	 * Do a binary search on the mapped file, comparing words in place (no allocations).
+	 * @param keyWord the word to look for.
+	 * @return true if keyWord is in the file, false otherwise.
+	 */
+	public boolean contains(CharSequence keyWord)
+	{
+		if (keyWord.length() != wordLength)
+			return false;
+
+		long lower = 0;
+		long upper = wordsQty-1;
+		long mid;
+		int comparison;
+
+		while (lower <= upper)
+		{
+			mid = (lower + upper) >>> 1;
+			comparison = compare(keyWord, mid);
+			if (comparison == 0)
+				return true;
+			if (comparison < 0)
+				upper = mid - 1;
+			else
+				lower = mid + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * Compare two words of the file, like String.compareTo.
+	 * @param first index of the first word in the file.
+	 * @param second index of the second word in the file.
+	 * @return a negative number, zero or a positive number if the first word is less than, equal to or greater than the second.
+	 */
+	private int compare(long first, long second)
+	{
+		int difference;
+		for (int i = 0; i < wordLength; i++)
+		{
+			difference = charAt(first, i) - charAt(second, i);
+			if (difference != 0)
+				return difference;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param index index of a word in the file.
+	 * @param position position of a letter in the word.
+	 * @return the letter.
+	 */
+	private int charAt(long index, int position)
+	{
+		return segments[(int) (index / recordsPerSegment)].get((int) (index % recordsPerSegment) * recordSize + position) & 0xFF;
+	}
+
+	/**
+	 * Compare a word with a word of the file, like String.compareTo.
+	 * @param keyWord the word to compare.
+	 * @param index index of the word in the file.
+	 * @return a negative number, zero or a positive number if keyWord is less than, equal to or greater than the word in the file.
+	 */
+	private int compare(CharSequence keyWord, long index)
+	{
+		MappedByteBuffer segment = segments[(int) (index / recordsPerSegment)];
+		int offset = (int) (index % recordsPerSegment) * recordSize;
+		int difference;
+		for (int i = 0; i < wordLength; i++)
+		{
+			difference = keyWord.charAt(i) - (segment.get(offset + i) & 0xFF);
+			if (difference != 0)
+				return difference;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,555 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+public class OffHeapUserStore implements UserStore
+{
+	/* maximum length of a user name (in bytes) */
+	public static final int MAX_NAME = 32;
+	/* maximum length of a password hash */
+	public static final int MAX_PASSWD = 64;
+	/* maximum length of a word (in bytes) */
+	public static final int MAX_WORD = 16;
+	/* last word length of a user who played no word */
+	private static final int NO_WORD = 0xFF;
+
+	/* user record fields offsets (fixed-size records; numbers big-endian, strings UTF-8 after their length byte) */
+	private static final int NAME_LENGTH = 0;
+	private static final int NAME = 1;
+	private static final int PASSWD_LENGTH = NAME + MAX_NAME;
+	private static final int PASSWD = PASSWD_LENGTH + 1;
+	private static final int WORD_LENGTH = PASSWD + MAX_PASSWD;
+	private static final int WORD = WORD_LENGTH + 1;
+	private static final int SEQ = (WORD + MAX_WORD + 3) & ~3; // aligned
+	private static final int VICTORIES = SEQ + 8;
+	private static final int DEFEATS = VICTORIES + 4;
+	private static final int LAST_STREAK = DEFEATS + 4;
+	private static final int MAX_STREAK = LAST_STREAK + 4;
+	private static final int LAST_GUESS_NO = MAX_STREAK + 4;
+	private static final int GUESSES = LAST_GUESS_NO + 4;
+
+	/* records per mapped segment of the store file */
+	private static final int SEGMENT_RECORDS = 1 << 16;
+	/* number of cache stripes (power of two) */
+	private static final int STRIPES = 16;
+	/* initial and maximum number of index slots (powers of two, 4 bytes each: at most 1 GB of index) */
+	private static final int INITIAL_SLOTS = 1 << 12;
+	private static final int MAX_SLOTS = 1 << 28;
+	/* maximum number of users (the index is kept at most half full) */
+	public static final int MAX_USERS = MAX_SLOTS / 2;
+
+	/* store file, rebuilt at each startup from users backup and journal (the durable copy of users) */
+	private final FileChannel channel;
+	/* length of users stats arrays */
+	private final int statsLength;
+	/* size of a user record */
+	private final int recordSize;
+	/* mapped segments of the store file - replaced (grown) under indexLock */
+	private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	/* number of records - written under indexLock */
+	private volatile int records = 0;
+
+	/* index of records: for each slot, record number + 1 (0 if free) - guarded by indexLock */
+	private ByteBuffer index = ByteBuffer.allocateDirect(INITIAL_SLOTS * 4);
+	private int slots = INITIAL_SLOTS;
+	private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+	/* cache stripes, each one guarded by its own lock (taken before indexLock and users locks) - evicted users are
+	   written back to their record, logged in users are never evicted (a session always works on the same User object) */
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	/* counters - cache hits, misses (users read from their record), evictions (users written back) */
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+
+	/**
+	 * Cache stripe: the recently used users whose name falls in it, least recently used first.
+	 */
+	private static class Stripe
+	{
+		/* cached users, by name */
+		private final LinkedHashMap<String,Cached> cache = new LinkedHashMap<String,Cached>(16, 0.75f, true);
+		/* maximum number of cached users, unless logged in */
+		private final int capacity;
+
+		private Stripe(int capacity)
+		{
+			this.capacity = capacity;
+		}
+	}
+
+	/**
+	 * Cached user, with its record number.
+	 */
+	private static class Cached
+	{
+		private final User user;
+		private final int record;
+
+		private Cached(User user, int record)
+		{
+			this.user = user;
+			this.record = record;
+		}
+	}
+
+
+	/**
+	 * Instantiate a new (empty) off-heap users store.
+	 * @param storeFile store file name (truncated).
+	 * @param statsLength length of users stats arrays (maximum attempts for a user to guess secret word).
+	 * @param cacheSize maximum number of users cached (beside logged in ones).
+	 * @throws IOException if the store file cannot be created.
+	 */
+	public OffHeapUserStore(String storeFile, int statsLength, int cacheSize) throws IOException
+	{
+		this.channel = FileChannel.open(Paths.get(storeFile), StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.statsLength = statsLength;
+		this.recordSize = GUESSES + 4 * statsLength;
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe(Math.max(1, cacheSize / STRIPES));
+	}
+
+	@Override
+	public User get(String name)
+	{
+		if (!accepts(name))
+			return null;
+
+		Stripe stripe = stripeOf(name);
+		synchronized (stripe)
+		{
+			Cached cached = stripe.cache.get(name);
+			if (cached != null)
+			{
+				hits.increment();
+				return cached.user;
+			}
+
+			int record = find(name.getBytes(StandardCharsets.UTF_8));
+			if (record < 0)
+				return null;
+
+			misses.increment();
+			User user = read(record);
+			stripe.cache.put(name, new Cached(user, record));
+			evict(stripe);
+			return user;
+		}
+	}
+
+	@Override
+	public boolean contains(String name)
+	{
+		return accepts(name) && find(name.getBytes(StandardCharsets.UTF_8)) >= 0;
+	}
+
+	@Override
+	public boolean accepts(String name)
+	{
+		return name.getBytes(StandardCharsets.UTF_8).length <= MAX_NAME;
+	}
+
+	@Override
+	public boolean add(User user)
+	{
+		String name = user.getName();
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		Stripe stripe = stripeOf(name);
+		synchronized (stripe)
+		{
+			int record;
+			indexLock.writeLock().lock();
+			try
+			{
+				if (find(nameBytes) >= 0)
+					return false;
+				record = allocate(nameBytes);
+			}
+			finally
+			{
+				indexLock.writeLock().unlock();
+			}
+
+			/* written back when evicted */
+			stripe.cache.put(name, new Cached(user, record));
+			evict(stripe);
+			return true;
+		}
+	}
+
+	@Override
+	public void restore(User user)
+	{
+		String name = user.getName();
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		if (nameBytes.length > MAX_NAME)
+			throw new IllegalArgumentException("user name too long for off-heap users store: " + name);
+
+		Stripe stripe = stripeOf(name);
+		synchronized (stripe)
+		{
+			int record;
+			indexLock.writeLock().lock();
+			try
+			{
+				record = find(nameBytes);
+				if (record < 0)
+					record = allocate(nameBytes);
+			}
+			finally
+			{
+				indexLock.writeLock().unlock();
+			}
+
+			stripe.cache.remove(name);
+			synchronized (user) {write(record, user);}
+		}
+	}
+
+	@Override
+	public void update(User user)
+	{
+		String name = user.getName();
+		Stripe stripe = stripeOf(name);
+		synchronized (stripe)
+		{
+			/* cached: written back when evicted */
+			if (stripe.cache.containsKey(name))
+				return;
+
+			/* evicted while being changed */
+			int record = find(name.getBytes(StandardCharsets.UTF_8));
+			if (record >= 0)
+				synchronized (user) {write(record, user);}
+		}
+	}
+
+	@Override
+	public User logIn(String name)
+	{
+		if (!accepts(name))
+			return null;
+
+		/* not evicted in between */
+		synchronized (stripeOf(name))
+		{
+			User user = get(name);
+			return (user != null && user.logIn()) ? user : null;
+		}
+	}
+
+	@Override
+	public void logOutAll()
+	{
+		for (Stripe stripe : stripes)
+			synchronized (stripe)
+			{
+				for (Cached cached : stripe.cache.values())
+					cached.user.logOut();
+				evict(stripe);
+			}
+	}
+
+	@Override
+	public void presize(int expected)
+	{
+		indexLock.writeLock().lock();
+		try
+		{
+			long needed = Math.min(MAX_SLOTS, Long.highestOneBit(Math.max(1, 2L * expected - 1)) << 1);
+			if (records == 0 && needed > slots)
+			{
+				slots = (int) needed;
+				index = ByteBuffer.allocateDirect(slots * 4);
+			}
+		}
+		finally
+		{
+			indexLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<User> view()
+	{
+		int size = records;
+		return new AbstractList<User>()
+		{
+			@Override
+			public User get(int record)
+			{
+				String name = new String(readName(record), StandardCharsets.UTF_8);
+				Stripe stripe = stripeOf(name);
+				synchronized (stripe)
+				{
+					/* the cached user may be more recent than its record */
+					Cached cached = stripe.cache.get(name);
+					return (cached != null) ? cached.user : read(record);
+				}
+			}
+
+			@Override
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public int size()
+	{
+		return records;
+	}
+
+	@Override
+	public String getCounters()
+	{
+		int cached = 0;
+		for (Stripe stripe : stripes)
+			synchronized (stripe) {cached += stripe.cache.size();}
+
+		long lookups = hits.sum() + misses.sum();
+		return "users store: offheap, users " + records +
+			", cached " + cached +
+			", hits " + hits.sum() +
+			", misses " + misses.sum() +
+			", hit rate " + ((lookups == 0) ? 0 : (100 * hits.sum() / lookups)) + "%" +
+			", evictions " + evictions.sum();
+	}
+
+
+	/**
+	 * @param name user name.
+	 * @return the cache stripe of the user.
+	 */
+	private Stripe stripeOf(String name)
+	{
+		int hash = name.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+	}
+
+	/**
+	 * Write back the least recently used users of a stripe in excess of its capacity, logged in users excluded.
+	 * To be called while holding the stripe lock.
+	 * @param stripe the stripe.
+	 */
+	private void evict(Stripe stripe)
+	{
+		int excess = stripe.cache.size() - stripe.capacity;
+		Iterator<Cached> lru = stripe.cache.values().iterator();
+		while (excess > 0 && lru.hasNext())
+		{
+			Cached cached = lru.next();
+			if (cached.user.getLogStatus())
+				continue;
+
+			synchronized (cached.user) {write(cached.record, cached.user);}
+			lru.remove();
+			evictions.increment();
+			excess--;
+		}
+	}
+
+	/**
+	 * @param name user name (UTF-8).
+	 * @return the record number of the user, or -1 if there is no such user.
+	 */
+	private int find(byte[] name)
+	{
+		indexLock.readLock().lock();
+		try
+		{
+			for (int slot = hash(name) & (slots - 1); ; slot = (slot + 1) & (slots - 1))
+			{
+				int entry = index.getInt(slot * 4);
+				if (entry == 0)
+					return -1;
+				if (nameEquals(entry - 1, name))
+					return entry - 1;
+			}
+		}
+		finally
+		{
+			indexLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Allocate a new record for a user, and add it to the index.
+	 * To be called while holding the write lock of indexLock.
+	 * @param name user name (UTF-8).
+	 * @return the record number.
+	 */
+	private int allocate(byte[] name)
+	{
+		int record = records;
+		if (record == MAX_USERS)
+			throw new IllegalStateException("off-heap users store is full (" + MAX_USERS + " users)");
+
+		/* map a new segment */
+		if (record / SEGMENT_RECORDS == segments.length)
+		{
+			MappedByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+			try {grown[segments.length] = channel.map(FileChannel.MapMode.READ_WRITE, (long) segments.length * SEGMENT_RECORDS * recordSize, (long) SEGMENT_RECORDS * recordSize);}
+			catch (IOException e) {throw new IllegalStateException("cannot grow off-heap users store", e);}
+			segments = grown;
+		}
+
+		/* grow index */
+		if (2L * (record + 1) > slots)
+		{
+			slots *= 2;
+			index = ByteBuffer.allocateDirect(slots * 4);
+			for (int i = 0; i < record; i++)
+				insert(i, readName(i));
+		}
+
+		ByteBuffer segment = segmentOf(record);
+		int base = offsetOf(record);
+		segment.put(base + NAME_LENGTH, (byte) name.length);
+		segment.put(base + NAME, name);
+		segment.put(base + WORD_LENGTH, (byte) NO_WORD);
+		insert(record, name);
+
+		records = record + 1;
+		return record;
+	}
+
+	/**
+	 * Add a record to the index.
+	 * @param record record number.
+	 * @param name user name (UTF-8).
+	 */
+	private void insert(int record, byte[] name)
+	{
+		int slot = hash(name) & (slots - 1);
+		while (index.getInt(slot * 4) != 0)
+			slot = (slot + 1) & (slots - 1);
+		index.putInt(slot * 4, record + 1);
+	}
+
+	/**
+	 * @param name user name (UTF-8).
+	 * @return FNV-1a hash value of the name.
+	 */
+	private static int hash(byte[] name)
+	{
+		int hash = 0x811C9DC5;
+		for (byte b : name)
+			hash = (hash ^ (b & 0xFF)) * 0x01000193;
+		return hash ^ (hash >>> 16);
+	}
+
+	/* mapped segment and offset of a record */
+	private ByteBuffer segmentOf(int record) {return segments[record / SEGMENT_RECORDS];}
+	private int offsetOf(int record) {return (record % SEGMENT_RECORDS) * recordSize;}
+
+	/**
+	 * @param record record number.
+	 * @param name user name (UTF-8).
+	 * @return true if the record belongs to the user with the given name.
+	 */
+	private boolean nameEquals(int record, byte[] name)
+	{
+		ByteBuffer segment = segmentOf(record);
+		int base = offsetOf(record);
+		if ((segment.get(base + NAME_LENGTH) & 0xFF) != name.length)
+			return false;
+		for (int i = 0; i < name.length; i++)
+			if (segment.get(base + NAME + i) != name[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * @param record record number.
+	 * @return the name (UTF-8) of the user of a record.
+	 */
+	private byte[] readName(int record)
+	{
+		ByteBuffer segment = segmentOf(record);
+		int base = offsetOf(record);
+		byte[] name = new byte[segment.get(base + NAME_LENGTH) & 0xFF];
+		segment.get(base + NAME, name);
+		return name;
+	}
+
+	/**
+	 * Decode a user from its record, logged out.
+	 * @param record record number.
+	 * @return the user.
+	 */
+	private User read(int record)
+	{
+		ByteBuffer segment = segmentOf(record);
+		int base = offsetOf(record);
+
+		byte[] passwd = new byte[segment.get(base + PASSWD_LENGTH) & 0xFF];
+		segment.get(base + PASSWD, passwd);
+		String lastWord = null;
+		int wordLength = segment.get(base + WORD_LENGTH) & 0xFF;
+		if (wordLength != NO_WORD)
+		{
+			byte[] word = new byte[wordLength];
+			segment.get(base + WORD, word);
+			lastWord = new String(word, StandardCharsets.UTF_8);
+		}
+		int[] guesses = new int[statsLength];
+		for (int i = 0; i < statsLength; i++)
+			guesses[i] = segment.getInt(base + GUESSES + 4 * i);
+
+		UserStats stats = new UserStats(segment.getInt(base + VICTORIES), segment.getInt(base + DEFEATS),
+			segment.getInt(base + LAST_STREAK), segment.getInt(base + MAX_STREAK), segment.getInt(base + LAST_GUESS_NO), guesses);
+		return new User(new String(readName(record), StandardCharsets.UTF_8), passwd, lastWord, stats, segment.getLong(base + SEQ));
+	}
+
+	/**
+	 * Encode a user to its record (name excluded, written once by allocate).
+	 * To be called while holding the user lock.
+	 * @param record record number.
+	 * @param user the user.
+	 */
+	private void write(int record, User user)
+	{
+		ByteBuffer segment = segmentOf(record);
+		int base = offsetOf(record);
+
+		byte[] passwd = user.getPasswd();
+		byte[] lastWord = (user.getLastWord() == null) ? null : user.getLastWord().getBytes(StandardCharsets.UTF_8);
+		if (passwd.length > MAX_PASSWD || (lastWord != null && lastWord.length > MAX_WORD))
+			throw new IllegalStateException("user does not fit in off-heap users store: " + user.getName());
+		UserStats stats = user.getStats();
+		int[] guesses = stats.getGuesses();
+
+		segment.put(base + PASSWD_LENGTH, (byte) passwd.length);
+		segment.put(base + PASSWD, passwd);
+		segment.put(base + WORD_LENGTH, (byte) ((lastWord == null) ? NO_WORD : lastWord.length));
+		if (lastWord != null)
+			segment.put(base + WORD, lastWord);
+		segment.putLong(base + SEQ, user.getSeq());
+		segment.putInt(base + VICTORIES, stats.getVictories());
+		segment.putInt(base + DEFEATS, stats.getDefeats());
+		segment.putInt(base + LAST_STREAK, stats.getLastStreak());
+		segment.putInt(base + MAX_STREAK, stats.getMaxStreak());
+		segment.putInt(base + LAST_GUESS_NO, stats.getLastGuessNo());
+		for (int i = 0; i < statsLength; i++)
+			segment.putInt(base + GUESSES + 4 * i, (i < guesses.length) ? guesses[i] : 0);
+	}
+}
@@ -0,0 +1,187 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+
+public class PasswordHasher
+{
+	/* length of a legacy (SHA-256) hash */
+	private static final int LEGACY_LENGTH = 32;
+	/* first byte of a salted hash, followed by PBKDF2 iterations (int), salt and derived key */
+	private static final byte SALTED = 1;
+	/* length of the salt and of the derived key of a salted hash */
+	private static final int SALT_LENGTH = 16;
+	private static final int KEY_LENGTH = 32;
+	/* length of a salted hash */
+	private static final int SALTED_LENGTH = 1 + 4 + SALT_LENGTH + KEY_LENGTH;
+
+	/* SHA-256 digest and PBKDF2 key factory of each hashing thread */
+	private static final ThreadLocal<MessageDigest> sha = ThreadLocal.withInitial(() -> {
+		try {return MessageDigest.getInstance("SHA-256");}
+		catch (NoSuchAlgorithmException e) {throw new IllegalStateException(e);}
+	});
+	private static final ThreadLocal<SecretKeyFactory> kdf = ThreadLocal.withInitial(() -> {
+		try {return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");}
+		catch (NoSuchAlgorithmException e) {throw new IllegalStateException(e);}
+	});
+	/* salts generator */
+	private static final SecureRandom random = new SecureRandom();
+
+	/* PBKDF2 iterations of new hashes */
+	private int iterations;
+	/* hashing threads, with their bounded queue (passwords are refused when it is full) */
+	private ThreadPoolExecutor pool;
+
+	/* counters - passwords hashed, verified, refused (queue full), legacy hashes upgraded, failures (bad stored hash) */
+	private final LongAdder hashed = new LongAdder();
+	private final LongAdder verified = new LongAdder();
+	private final LongAdder refused = new LongAdder();
+	private final LongAdder upgraded = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+
+	/**
+	 * Instantiate a new password hasher.
+	 * @param threads number of hashing threads.
+	 * @param queueSize maximum number of passwords waiting to be hashed.
+	 * @param iterations PBKDF2 iterations of new hashes.
+	 */
+	public PasswordHasher(int threads, int queueSize, int iterations)
+	{
+		AtomicInteger threadNo = new AtomicInteger(0);
+		this.iterations = iterations;
+		this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), task -> {
+			Thread thread = new Thread(task, "hasher-" + threadNo.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Hash a new password, asynchronously.
+	 * @param password the password.
+	 * @param done called on a hashing thread with the salted hash of the password, or null if hashing failed (it is
+	 * always called, so that the waiting client can go on).
+	 * @return true if the password will be hashed, false if too many passwords are waiting to be hashed.
+	 */
+	public boolean hash(String password, Consumer<byte[]> done)
+	{
+		return execute(() -> {
+			byte[] hash = null;
+			try
+			{
+				hash = salted(password);
+				hashed.increment();
+			}
+			catch (RuntimeException e) {failed.increment();}
+			done.accept(hash);
+		});
+	}
+
+	/**
+	 * Verify a password against the hash of a user's password, asynchronously.
+	 * @param password the password.
+	 * @param stored hash of the user's password.
+	 * @param done called on a hashing thread with null if the password is wrong (or cannot be verified against a
+	 * corrupted stored hash), otherwise with the hash to be stored for the user (a new salted one if stored is a legacy
+	 * one, stored itself otherwise). It is always called, so that the waiting client can go on.
+	 * @return true if the password will be verified, false if too many passwords are waiting to be hashed.
+	 */
+	public boolean verify(String password, byte[] stored, Consumer<byte[]> done)
+	{
+		return execute(() -> {
+			byte[] result = null;
+			try
+			{
+				if (stored.length == LEGACY_LENGTH && MessageDigest.isEqual(stored, sha.get().digest(password.getBytes())))
+				{
+					result = salted(password);
+					upgraded.increment();
+				}
+				else if (stored.length == SALTED_LENGTH && stored[0] == SALTED)
+				{
+					ByteBuffer fields = ByteBuffer.wrap(stored, 1, 4 + SALT_LENGTH);
+					int storedIterations = fields.getInt();
+					byte[] salt = new byte[SALT_LENGTH];
+					fields.get(salt);
+					byte[] key = derive(password, salt, storedIterations);
+					if (MessageDigest.isEqual(key, Arrays.copyOfRange(stored, SALTED_LENGTH - KEY_LENGTH, SALTED_LENGTH)))
+						result = stored;
+				}
+				verified.increment();
+			}
+			catch (RuntimeException e)
+			{
+				result = null;
+				failed.increment();
+			}
+			done.accept(result);
+		});
+	}
+
+	/**
+	 * Run a hashing task, unless the queue is full.
+	 * @param task the task.
+	 * @return true if the task will be run.
+	 */
+	private boolean execute(Runnable task)
+	{
+		try {pool.execute(task);}
+		catch (RejectedExecutionException e)
+		{
+			refused.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param password the password.
+	 * @return a new salted hash of the password.
+	 */
+	private byte[] salted(String password)
+	{
+		byte[] salt = new byte[SALT_LENGTH];
+		random.nextBytes(salt);
+		return ByteBuffer.allocate(SALTED_LENGTH).put(SALTED).putInt(iterations).put(salt).put(derive(password, salt, iterations)).array();
+	}
+
+	/**
+	 * @param password the password.
+	 * @param salt the salt.
+	 * @param iterations PBKDF2 iterations.
+	 * @return PBKDF2-HMAC-SHA256 of the password.
+	 */
+	private static byte[] derive(String password, byte[] salt, int iterations)
+	{
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_LENGTH * 8);
+		try {return kdf.get().generateSecret(spec).getEncoded();}
+		catch (InvalidKeySpecException e) {throw new IllegalStateException(e);}
+		finally {spec.clearPassword();}
+	}
+
+	/**
+	 * @return a printable summary of the password hasher counters.
+	 */
+	public String getCounters()
+	{
+		return "password hasher: hashed " + hashed.sum() +
+			", verified " + verified.sum() +
+			", upgraded " + upgraded.sum() +
+			", refused " + refused.sum() +
+			", failed " + failed.sum() +
+			", queued " + pool.getQueue().size();
+	}
+}
@@ -0,0 +1,47 @@
+public class Ranking
+{
+	/* leaderboard name */
+	private String board;
+	/* names of the top players, best first */
+	private String[] names;
+	/* scores of the top players */
+	private float[] scores;
+	/* rank of the requesting user (0 if not ranked) */
+	private int rank;
+	/* score of the requesting user (if ranked) */
+	private float score;
+	/* number of ranked players */
+	private int players;
+
+	/**
+	 * Instantiate new ranking object.
+	 * @param board leaderboard name.
+	 * @param names names of the top players, best first.
+	 * @param scores scores of the top players.
+	 * @param rank rank of the requesting user (0 if not ranked).
+	 * @param score score of the requesting user (if ranked).
+	 * @param players number of ranked players.
+	 */
+	public Ranking(String board, String[] names, float[] scores, int rank, float score, int players)
+	{
+		this.board = board;
+		this.names = names;
+		this.scores = scores;
+		this.rank = rank;
+		this.score = score;
+		this.players = players;
+	}
+
+	/* board */
+	public String getBoard() {return board;}
+	/* names */
+	public String[] getNames() {return names;}
+	/* scores */
+	public float[] getScores() {return scores;}
+	/* rank */
+	public int getRank() {return rank;}
+	/* score */
+	public float getScore() {return score;}
+	/* players */
+	public int getPlayers() {return players;}
+}
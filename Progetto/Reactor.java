@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class Reactor extends Thread
+{
+	/* for setting clients id, shared by all reactors */
+	private static final AtomicInteger clientID = new AtomicInteger(0);
+
+	/* reactor number */
+	private int reactorNo;
+	/* selector to handle operations of the clients owned by this reactor */
+	private Selector selector;
+	/* executor for handling client requests */
+	private Executor clientPool;
+	/* clients handed over by the acceptor, waiting to be registered */
+	private final Queue<SocketChannel> newClients = new ConcurrentLinkedQueue<SocketChannel>();
+
+	/* counters - clients assigned to this reactor since start */
+	private final AtomicLong assigned = new AtomicLong(0);
+	/* counters - clients currently connected */
+	private final AtomicInteger active = new AtomicInteger(0);
+	/* counters - complete requests read */
+	private final AtomicLong requests = new AtomicLong(0);
+	/* counters - bytes read */
+	private final AtomicLong bytesIn = new AtomicLong(0);
+	/* counters - bytes written */
+	private final AtomicLong bytesOut = new AtomicLong(0);
+
+
+	/**
+	 * Instantiate a new reactor, owning its own selector.
+	 * @param reactorNo reactor number.
+	 * @param clientPool executor for handling client requests.
+	 * @throws IOException if the selector cannot be opened.
+	 */
+	public Reactor(int reactorNo, Executor clientPool) throws IOException
+	{
+		super("reactor-" + reactorNo);
+		this.reactorNo = reactorNo;
+		this.clientPool = clientPool;
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * Hand a newly accepted client over to this reactor.
+	 * @param client socket channel of the new client.
+	 */
+	public void assign(SocketChannel client)
+	{
+		assigned.incrementAndGet();
+		active.incrementAndGet();
+		newClients.add(client);
+		selector.wakeup();
+	}
+
+	/**
+	 * Notify this reactor that one of its clients has been disconnected - see ClientStatus.
+	 */
+	public void clientClosed()
+	{
+		active.decrementAndGet();
+	}
+
+	/* active */
+	public int getLoad() {return active.get();}
+
+	/**
+	 * @return a printable summary of this reactor's counters.
+	 */
+	public String getCounters()
+	{
+		return "reactor " + reactorNo +
+			": assigned " + assigned.get() +
+			", active " + active.get() +
+			", requests " + requests.get() +
+			", bytes in " + bytesIn.get() +
+			", bytes out " + bytesOut.get();
+	}
+
+	@Override
+	public void run()
+	{
+		Iterator<SelectionKey> keyIterator;
+		SelectionKey key;
+		while (true)
+		{
+			/* wait for operation requests */
+			try {selector.select();}
+			catch (IOException e) {continue;}
+
+			/* register clients handed over meanwhile */
+			registerClients();
+
+			keyIterator = selector.selectedKeys().iterator();
+			while (keyIterator.hasNext())
+			{
+				key = keyIterator.next();
+				keyIterator.remove();
+
+				/* if a client wants to perform an operation */
+				if (key.isValid() && key.isReadable())
+					readClient(key);
+
+				/* if a client is ready to receive something from server */
+				if (key.isValid() && key.isWritable())
+					writeClient(key);
+			}
+		}
+	}
+
+	/**
+	 * Register clients handed over by the acceptor.
+	 */
+	private void registerClients()
+	{
+		SocketChannel client;
+		while ((client = newClients.poll()) != null)
+		{
+			try
+			{
+				client.configureBlocking(false);
+				/* watch for writes only when there is something to send - see ClientStatus */
+				SelectionKey clientKey = client.register(selector, SelectionKey.OP_READ);
+				clientKey.attach(new ClientStatus(clientID.getAndIncrement(), clientKey, this, clientPool));
+			}
+			catch (IOException e)
+			{
+				/* if client cannot be registered, just drop it */
+				try {client.close();}
+				catch (IOException ioe) {/* do nothing */}
+				active.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Read data sent from a client, dispatching every complete request.
+	 * @param key client's associated selection key.
+	 */
+	private void readClient(SelectionKey key)
+	{
+		ClientStatus clientStatus = (ClientStatus) key.attachment();
+		try
+		{
+			/* retrieve data sent from client */
+			ChannelReader fromClient = new ChannelReader((SocketChannel) key.channel(), clientStatus.getInBuffer());
+			int numBytes = fromClient.read();
+			/* if client disconnected */
+			if (numBytes == -1)
+			{
+				clientStatus.close();
+				return;
+			}
+			bytesIn.addAndGet(numBytes);
+
+			/* dispatch every complete request, partial ones stay buffered */
+			Frame request;
+			while ((request = fromClient.nextFrame()) != null)
+			{
+				requests.incrementAndGet();
+				ServerMain.dispatch(key, request);
+			}
+		}
+		catch (IOException e)
+		{
+			/* cannot communicate with client or malformed request, close client communication */
+			clientStatus.close();
+		}
+	}
+
+	/**
+	 * Send queued responses to a client, as long as its channel accepts data.
+	 * @param key client's associated selection key.
+	 */
+	private void writeClient(SelectionKey key)
+	{
+		SocketChannel client = (SocketChannel) key.channel();
+		ClientStatus clientStatus = (ClientStatus) key.attachment();
+		ByteBuffer outBuffer;
+		try
+		{
+			while ((outBuffer = clientStatus.getOutput()) != null)
+			{
+				bytesOut.addAndGet(client.write(outBuffer));
+
+				/* if channel's send buffer is full, wait for next write readiness */
+				if (outBuffer.hasRemaining())
+					return;
+			}
+
+			/* if everything has been sent */
+			if (clientStatus.isClosing())
+			{
+				clientStatus.close();
+				return;
+			}
+
+			/* stop watching for writes, unless a handler queued something meanwhile */
+			key.interestOpsAnd(~SelectionKey.OP_WRITE);
+			if (clientStatus.hasOutput())
+				key.interestOpsOr(SelectionKey.OP_WRITE);
+		}
+		catch (CancelledKeyException e) {/* client disconnected meanwhile */}
+		catch (IOException e)
+		{
+			/* cannot communicate with client, close it */
+			clientStatus.close();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+
+public class Reservations
+{
+	/* reservations checked for expiry at each new reservation */
+	private static final int SWEEP_STEP = 8;
+
+	/* reservations, by name - an expired one may be taken over, and is swept a few at a time at each new reservation */
+	private final ConcurrentHashMap<String,Reservation> table = new ConcurrentHashMap<String,Reservation>();
+	/* nanoseconds a reservation lasts */
+	private final long ttl;
+	/* maximum number of reservations */
+	private final int maxReservations;
+	/* a thread is sweeping expired reservations */
+	private final AtomicBoolean sweeping = new AtomicBoolean(false);
+	/* position of the sweep - accessed by the sweeping thread only */
+	private Iterator<Reservation> cursor;
+
+	/* counters - reservations made, turned into users, released, expired, refused (too many reservations) */
+	private final LongAdder reserved = new LongAdder();
+	private final LongAdder committed = new LongAdder();
+	private final LongAdder released = new LongAdder();
+	private final LongAdder expired = new LongAdder();
+	private final LongAdder refused = new LongAdder();
+
+
+	/**
+	 * A name reserved by a client (immutable).
+	 */
+	public static class Reservation
+	{
+		/* reserved name */
+		private final String name;
+		/* time at which the reservation expires */
+		private final long expiry;
+		/* reservations table */
+		private final Reservations table;
+
+		private Reservation(String name, long expiry, Reservations table)
+		{
+			this.name = name;
+			this.expiry = expiry;
+			this.table = table;
+		}
+
+		/* name */
+		public String getName() {return name;}
+
+		/**
+		 * Release this reservation, unless it has been turned into a user or taken over meanwhile.
+		 */
+		public void release()
+		{
+			if (table.table.remove(name, this))
+				table.released.increment();
+		}
+
+		/**
+		 * @param now current time (nanoseconds).
+		 * @return true if this reservation has expired.
+		 */
+		private boolean isExpired(long now)
+		{
+			return now - expiry >= 0;
+		}
+	}
+
+
+	/**
+	 * Instantiate a new reservations table.
+	 * @param ttl seconds a reservation lasts.
+	 * @param maxReservations maximum number of reservations.
+	 */
+	public Reservations(int ttl, int maxReservations)
+	{
+		this.ttl = ttl * 1_000_000_000L;
+		this.maxReservations = maxReservations;
+	}
+
+	/**
+	 * Reserve a name, unless it is reserved by another client (an expired reservation is taken over).
+	 * @param name the name to reserve.
+	 * @return the reservation, or null if the name is already reserved or there are too many reservations.
+	 */
+	public Reservation reserve(String name)
+	{
+		long now = System.nanoTime();
+		sweep(now);
+
+		if (table.size() >= maxReservations)
+		{
+			refused.increment();
+			return null;
+		}
+
+		Reservation reservation = new Reservation(name, now + ttl, this);
+		Reservation current = table.putIfAbsent(name, reservation);
+		if (current != null)
+		{
+			if (!current.isExpired(now) || !table.replace(name, current, reservation))
+				return null;
+			expired.increment();
+		}
+
+		reserved.increment();
+		return reservation;
+	}
+
+	/**
+	 * Turn a reservation into a user: register it, and remove the reservation at once, unless the reservation has
+	 * been taken over by another client in the meantime. Reservations of the same name wait meanwhile.
+	 * @param reservation the reservation.
+	 * @param register registers the user, true if registered.
+	 * @return true if the user was registered.
+	 */
+	public boolean commit(Reservation reservation, BooleanSupplier register)
+	{
+		boolean[] registered = {false};
+		table.computeIfPresent(reservation.name, (name, current) -> {
+			if (current != reservation)
+				return current;
+			registered[0] = register.getAsBoolean();
+			return null;
+		});
+
+		if (registered[0])
+			committed.increment();
+		return registered[0];
+	}
+
+	/**
+	 * @return true if no more reservations can be made.
+	 */
+	public boolean isFull()
+	{
+		return table.size() >= maxReservations;
+	}
+
+	/**
+	 * Remove expired reservations, checking SWEEP_STEP of them from where the previous sweep stopped.
+	 * Done by one thread at a time, the others don't wait.
+	 * @param now current time (nanoseconds).
+	 */
+	private void sweep(long now)
+	{
+		if (!sweeping.compareAndSet(false, true))
+			return;
+
+		try
+		{
+			for (int i = 0; i < SWEEP_STEP; i++)
+			{
+				if (cursor == null || !cursor.hasNext())
+				{
+					cursor = table.values().iterator();
+					if (!cursor.hasNext())
+						break;
+				}
+
+				Reservation reservation = cursor.next();
+				if (reservation.isExpired(now) && table.remove(reservation.name, reservation))
+					expired.increment();
+			}
+		}
+		finally
+		{
+			sweeping.set(false);
+		}
+	}
+
+	/**
+	 * @return a printable summary of the reservations counters.
+	 */
+	public String getCounters()
+	{
+		return "reservations: pending " + table.size() +
+			", made " + reserved.sum() +
+			", registered " + committed.sum() +
+			", released " + released.sum() +
+			", expired " + expired.sum() +
+			", refused " + refused.sum();
+	}
+}
@@ -0,0 +1,86 @@
+import java.nio.ByteBuffer;
+
+
+public class Response
+{
+	/* server ack */
+	private int ack;
+	/* optional server message following the ack, encoded (null if none) */
+	private byte[] message;
+	/* optional packed hint following the ack - see Hint */
+	private int hint;
+	/* opcode of the frame following the ack (0 if none) */
+	private int opcode;
+	/* close client connection once this response has been sent */
+	private boolean close;
+
+
+	/**
+	 * Instantiate a new response.
+	 * @param ack server ack.
+	 * @param message optional server message following the ack, null if none.
+	 * @param close if true, client connection is closed once this response has been sent.
+	 */
+	public Response(int ack, String message, boolean close)
+	{
+		this(ack, (message == null) ? null : message.getBytes(), close);
+	}
+
+	/**
+	 * Instantiate a new response carrying an already encoded message (shared, not modified).
+	 * @param ack server ack.
+	 * @param message optional encoded server message following the ack, null if none.
+	 * @param close if true, client connection is closed once this response has been sent.
+	 */
+	public Response(int ack, byte[] message, boolean close)
+	{
+		this.ack = ack;
+		this.message = message;
+		this.close = close;
+		this.opcode = (message == null) ? 0 : Frame.OP_STRING;
+	}
+
+	/**
+	 * Instantiate a new response carrying a packed hint.
+	 * @param ack server ack.
+	 * @param hint packed hint following the ack - see Hint.
+	 */
+	public Response(int ack, int hint)
+	{
+		this.ack = ack;
+		this.hint = hint;
+		this.opcode = Frame.OP_HINT;
+	}
+
+	/* close */
+	public boolean closes() {return close;}
+
+	/**
+	 * Encode this response (ack frame, followed by message or hint frame if any) into a buffer.
+	 * @param outBuffer buffer to reuse, if large enough.
+	 * @return the buffer holding the encoded response, ready to be written on a channel.
+	 */
+	public ByteBuffer encode(ByteBuffer outBuffer)
+	{
+		byte[] payload = message;
+		int size = Frame.HEADER_SIZE + 4;
+		if (opcode == Frame.OP_STRING)
+			size += Frame.HEADER_SIZE + payload.length;
+		if (opcode == Frame.OP_HINT)
+			size += Frame.HEADER_SIZE + 4;
+
+		/* grow buffer if needed */
+		if (outBuffer.capacity() < size)
+			outBuffer = ByteBuffer.allocate(size);
+
+		outBuffer.clear();
+		outBuffer.putInt(4).putInt(Frame.OP_INT).putInt(ack);
+		if (opcode == Frame.OP_STRING)
+			outBuffer.putInt(payload.length).putInt(Frame.OP_STRING).put(payload);
+		if (opcode == Frame.OP_HINT)
+			outBuffer.putInt(4).putInt(Frame.OP_HINT).putInt(hint);
+		outBuffer.flip();
+
+		return outBuffer;
+	}
+}
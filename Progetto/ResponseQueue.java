@@ -0,0 +1,57 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ResponseQueue
+{
+	/* queued responses, in order */
+	private final ConcurrentLinkedQueue<Response> responses = new ConcurrentLinkedQueue<Response>();
+	/* number of queued responses */
+	private final AtomicInteger size = new AtomicInteger(0);
+	/* maximum number of queued responses */
+	private int capacity;
+
+
+	/**
+	 * Instantiate a new bounded response queue.
+	 * @param capacity maximum number of queued responses.
+	 */
+	public ResponseQueue(int capacity)
+	{
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Append a response, without blocking.
+	 * @param response response to append.
+	 * @return true if the response has been queued, false if the queue is full.
+	 */
+	public boolean offer(Response response)
+	{
+		int n;
+		do
+		{
+			n = size.get();
+			if (n >= capacity)
+				return false;
+		} while (!size.compareAndSet(n, n+1));
+
+		responses.add(response);
+		return true;
+	}
+
+	/**
+	 * Remove the oldest response.
+	 * @return the oldest response, or null if the queue is empty.
+	 */
+	public Response poll()
+	{
+		Response response = responses.poll();
+		if (response != null)
+			size.decrementAndGet();
+		return response;
+	}
+
+	/* size */
+	public boolean isEmpty() {return responses.isEmpty();}
+}
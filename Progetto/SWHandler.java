@@ -1,84 +1,59 @@
 import java.io.*;
-import java.lang.StringBuilder;
-import java.lang.Math;
 import java.lang.Thread;
-import java.util.HashMap;
-import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SWHandler extends Thread
 {
-	/* reference - current secret word */
-	private StringBuilder secretWord;
-	/* reference - content of current secret word */
-	private HashMap<Character,ArrayList<Integer>> swContent;
+	/* reference - current secret word snapshot */
+	private AtomicReference<SecretWordSnapshot> secretWord;
+	/* reference - statistics of the last games */
+	private GameHistory games;
 	/* reference - opened words file */
 	private RandomAccessFile wordsFile;
 	/* length of a word (in bytes) */
 	private int wordLength;
 	/* time for a new secret word to be extracted (in minutes) */
 	private int nextSWTime;
+	/* maximum number of guessed words whose result is cached in each game */
+	private int guessCacheSize;
 	/* game number */
-	private AtomicInteger gameNo;
+	private int gameNo = 0;
 
 
 	/**
 	 * Instantiate a new secret word handler.
-	 * @param secretWord reference to the secret word.
-	 * @param swContent reference to content of the secret word.
+	 * @param secretWord reference to the current secret word snapshot.
+	 * @param games reference to the statistics of the last games.
 	 * @param wordsFile reference to the words file.
 	 * @param wordLength length of a word (in bytes).
 	 * @param nextSWTime time for a new secret word to be extracted (in minutes).
-	 * @param gameNo game number.
+	 * @param guessCacheSize maximum number of guessed words whose result is cached in each game.
 	 */
-	public SWHandler(StringBuilder secretWord, HashMap<Character,ArrayList<Integer>> swContent, RandomAccessFile wordsFile, int wordLength, int nextSWTime, AtomicInteger gameNo)
+	public SWHandler(AtomicReference<SecretWordSnapshot> secretWord, GameHistory games, RandomAccessFile wordsFile, int wordLength, int nextSWTime, int guessCacheSize)
 	{
 		this.secretWord = secretWord;
-		this.swContent = swContent;
+		this.games = games;
 		this.wordsFile = wordsFile;
 		this.wordLength = wordLength;
 		this.nextSWTime = nextSWTime;
-		this.gameNo = gameNo;
+		this.guessCacheSize = guessCacheSize;
 	}
 
 	@Override
 	public void run()
 	{
-		String sw;
 		try
 		{
 			while (true)
 			{
 				/* update game number */
-				gameNo.incrementAndGet();
+				gameNo++;
 
-				/* replace old secret word */
-				secretWord.delete(0, wordLength+1); // beware of \0
-				sw = WordsFileHandler.getRandomWord();
-				secretWord.append(sw);
-				System.out.println("\nSecret word changed to: " + secretWord.toString() + "\n");
-
-				/* define secret word's content */
-				char c;
-				swContent.clear();
-				for (int i = 0; i < wordLength; i++)
-				{
-					c = sw.charAt(i);
-					if (!swContent.containsKey(c))
-					{
-						ArrayList<Integer> occurrences = new ArrayList<Integer>(wordLength);
-						occurrences.add(1);
-						occurrences.add(i);
-						swContent.put(c, occurrences);
-					}
-					else
-					{
-						ArrayList<Integer> occurrences = swContent.get(c);
-						int occNo = occurrences.get(0);
-						occurrences.set(0, occNo+1);
-						occurrences.add(i);
-					}
-				}
+				/* replace old secret word, publishing a new snapshot (with an empty guess cache and new statistics) at once */
+				String word = WordsFileHandler.getRandomWord();
+				secretWord.set(new SecretWordSnapshot(gameNo, word, guessCacheSize, games.newGame(gameNo, word)));
+				games.publish(gameNo);
+				System.out.println("\nSecret word changed to: " + secretWord.get().getWord() + "\n");
 
 				/* wait */
 				Thread.sleep(nextSWTime * 60000);
@@ -94,5 +69,10 @@ public class SWHandler extends Thread
 			System.err.println("FATAL ERROR: failure while waiting for next secret word.");
 			System.exit(1);
 		}
+		catch (RuntimeException e)
+		{
+			System.err.println("FATAL ERROR: failure while changing secret word (" + e + ").");
+			System.exit(1);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+public class SecretWordSnapshot
+{
+	/* number of letters in the alphabet */
+	public static final int ALPHABET_SIZE = 26;
+
+	/* game number */
+	private final int gameNo;
+	/* secret word */
+	private final String word;
+	/* letters of secret word, as indexes from 0 ('a') to 25 ('z') */
+	private final byte[] letters;
+	/* occurrences of each letter in secret word */
+	private final int[] letterCounts = new int[ALPHABET_SIZE];
+	/* results of the words guessed in this game (dropped with the snapshot at the next secret word) */
+	private final GuessCache guesses;
+	/* statistics of the players of this game */
+	private final GameStats stats;
+
+
+	/**
+	 * Instantiate a new (immutable) secret word snapshot.
+	 * @param gameNo game number.
+	 * @param word secret word, made of lowercase letters.
+	 * @param guessCacheSize maximum number of guessed words whose result is cached (0 disables caching).
+	 * @param stats statistics of the players of this game - see GameHistory.
+	 */
+	public SecretWordSnapshot(int gameNo, String word, int guessCacheSize, GameStats stats)
+	{
+		this.gameNo = gameNo;
+		this.word = word;
+		this.guesses = new GuessCache(guessCacheSize);
+		this.stats = stats;
+
+		/* define secret word's content */
+		letters = new byte[word.length()];
+		for (int i = 0; i < letters.length; i++)
+		{
+			letters[i] = (byte) (word.charAt(i) - 'a');
+			letterCounts[letters[i]]++;
+		}
+	}
+
+	/* gameNo */
+	public int getGame() {return gameNo;}
+	/* word */
+	public String getWord() {return word;}
+	public int length() {return letters.length;}
+	/* letters */
+	public int letterAt(int position) {return letters[position];}
+	/* letterCounts */
+	public int countOf(int letter) {return letterCounts[letter];}
+	/* (reference to) guesses */
+	public GuessCache getGuesses() {return guesses;}
+	/* (reference to) stats */
+	public GameStats getStats() {return stats;}
+}
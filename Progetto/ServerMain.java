@@ -1,13 +1,13 @@
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.lang.Thread;
-import java.lang.StringBuilder;
 import java.lang.reflect.Type;
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
@@ -21,16 +21,12 @@ public class ServerMain
 	private static final String configFile = "configuration/serverProperties.properties";
 	/* admin (server user) input */
 	private static final Scanner adminInput = new Scanner(System.in);
-	/* thread pool for executing client requests */
-	private static final ExecutorService clientPool = Executors.newCachedThreadPool();
-	/* current secret word - see SWHandler */
-	private static final StringBuilder secretWord = new StringBuilder();
-	/* content of current secret word (for later comparison with guessed word) - see SWHandler */
-	private static final HashMap<Character,ArrayList<Integer>> swContent = new HashMap<Character,ArrayList<Integer>>();
+	/* executor for handling client requests - see executionMode */
+	private static ExecutorService clientPool;
+	/* current secret word snapshot, replaced at each new secret word - see SWHandler */
+	private static final AtomicReference<SecretWordSnapshot> secretWord = new AtomicReference<SecretWordSnapshot>();
 	/* local users database */
-	private static final HashMap<String,User> usersDB = new HashMap<String,User>();
-	/* game number, incremented with each new secret word - see SWHandler */
-	private static final AtomicInteger gameNo = new AtomicInteger(0);
+	private static UserRepository usersDB;
 	
 	/* listen for new client connection requests */
 	private static final AtomicBoolean listen = new AtomicBoolean(true);
@@ -42,14 +38,64 @@ public class ServerMain
 
 	/* words file name */
 	private static String wordsFilename;
+	/* how words file is accessed: "heap" (loaded in memory) or "mmap" (memory-mapped) - see WordsFileHandler */
+	private static String wordsMode;
 	/* opened words file */
 	private static RandomAccessFile wordsFile;
 	/* users backup file */
 	private static String usersFile;
+	/* format of users backups written by the server: "binary" (see UsersSnapshot) or "json" (either is read) */
+	private static String usersFormat;
+	/* where users are kept: "heap" or "offheap" (memory-mapped records, with a cache of recently used users) */
+	private static String userStorage;
+	/* off-heap users store file, rebuilt at startup - see OffHeapUserStore */
+	private static String userStoreFile;
+	/* maximum number of users cached by the off-heap users store (logged in users excluded) */
+	private static int userCacheSize;
+	/* seconds a username stays reserved for a client in the middle of a registration - see Reservations */
+	private static int reservationTimeout;
+	/* maximum number of usernames reserved at the same time */
+	private static int maxReservations;
+	/* users journal file, holding changes made after the last backup - see Journal */
+	private static String journalFile;
+	/* milliseconds between two syncs of users journal to disk, 0 to sync every batch of changes */
+	private static int journalSyncInterval;
+	/* users journal */
+	private static Journal journal;
+	/* minutes between two background snapshots of users database, 0 for snapshots at shutdown only */
+	private static int snapshotInterval;
+	/* number of shards of users serialized in parallel by a snapshot, 0 for one per core */
+	private static int snapshotShards;
+	/* users database snapshotter - see Snapshotter */
+	private static Snapshotter snapshotter;
+	/* threads hashing passwords, 0 for one every two cores - see PasswordHasher */
+	private static int hashThreads;
+	/* maximum number of passwords waiting to be hashed, before refusing logins and registrations */
+	private static int hashQueueSize;
+	/* PBKDF2 iterations of new password hashes */
+	private static int hashIterations;
+	/* password hasher */
+	private static PasswordHasher hasher;
+	/* login attempts per minute, and in a row, for a user name (across connections) - see LoginLimiter */
+	private static int loginRate;
+	private static int loginBurst;
+	/* login attempts per minute, and in a row, from a remote address (across connections) */
+	private static int addressLoginRate;
+	private static int addressLoginBurst;
+	/* maximum number of user names (and of addresses) tracked by login limiter, before sweeping idle ones */
+	private static int loginLimiterEntries;
+	/* login attempts limiter */
+	private static LoginLimiter limiter;
+	/* minimum number of games for a user to be ranked by victory rate (and of victories by average attempts) */
+	private static int leaderboardMinGames;
+	/* number of top players sent with a leaderboard */
+	private static int leaderboardSize;
 	/* maximum attempts for a user to guess login password */
 	private static int maxLogPassAttempts;
 	/* minimum length of a password (for registration) */
 	private static int minPassLength;
+	/* how client requests are executed: "pool" (platform threads) or "virtual" (one virtual thread per request) */
+	private static String executionMode;
 
 	/* multicast socket for sending clients sharings */
 	private static MulticastSocket mcSocket;
@@ -58,8 +104,10 @@ public class ServerMain
 	/* multicast group port */
 	private static int groupPort;
 
-	/* selector to handle client operations */
-	private static Selector selector;
+	/* reactors to handle client operations, each one owning a subset of client connections */
+	private static Reactor[] reactors;
+	/* number of reactors */
+	private static int reactorsNo;
 	/* server socket channel to listen for new client connections */
 	private static ServerSocketChannel listener;
 	/* port on which server listen for new client connections */
@@ -71,9 +119,12 @@ public class ServerMain
 	private static int wordleMaxAttempts;
 	/* WORDLE - time for a new secret word to be extracted */
 	private static int nextSWTime;
-
-	/* for setting clients id */
-	private static int clientID = 0;
+	/* WORDLE - maximum number of guessed words whose result is cached in each game */
+	private static int guessCacheSize;
+	/* WORDLE - number of last games whose statistics are kept */
+	private static int gameHistorySize;
+	/* WORDLE - statistics of the last games */
+	private static GameHistory games;
 
 
 	public static void main(String[] args)
@@ -87,22 +138,45 @@ public class ServerMain
 		catch (IOException e)
 		{failServer("error while reading configuration file");}
 
+		/* create executor for handling client requests */
+		try {clientPool = newClientPool();}
+		catch (UnsupportedOperationException e)
+		{failServer("virtual threads are not supported by this JVM");}
+
 		/* open words file */
 		try {wordsFile = new RandomAccessFile(wordsFilename, "r");}
 		catch (FileNotFoundException e)
 		{failServer("words file inexistent or not accessible");}
 		
 		/* initialize words file handler (class) */
-		try {new WordsFileHandler(wordsFile, wordLength);}
+		try {new WordsFileHandler(wordsFile, wordLength, wordsMode);}
 		catch (IOException e)
 		{failServer("words file handler fatal error");}
 
+		/* create users database */
+		try {usersDB = new UserRepository(userStorage.equals("offheap") ? new OffHeapUserStore(userStoreFile, wordleMaxAttempts, userCacheSize) : new HeapUserStore(), new Reservations(reservationTimeout, maxReservations));}
+		catch (IOException e)
+		{failServer("cannot create off-heap users store file");}
+
 		/* restore users databse if previously backed up */
 		try {setUsersDB();}
 		catch (FileNotFoundException e)
-		{failServer("users json file inexistent or not accessible");}
+		{failServer("users backup file inexistent or not accessible");}
 		catch (IOException | JsonParseException e)
-		{failServer("error while importing users data from json file");}
+		{failServer("error while importing users data from backup file");}
+		catch (IllegalArgumentException | IllegalStateException e)
+		{failServer("users backup does not fit in users store: " + e.getMessage());}
+
+		/* rank users, then keep leaderboards updated */
+		usersDB.setLeaderboard(new Leaderboard(leaderboardMinGames, leaderboardSize));
+
+		/* start taking background snapshots of users database */
+		snapshotter = new Snapshotter(usersDB, usersFile, usersFormat, wordleMaxAttempts, journal, snapshotInterval, snapshotShards);
+		snapshotter.start();
+
+		/* start hashing passwords on their own threads */
+		hasher = new PasswordHasher(hashThreads, hashQueueSize, hashIterations);
+		limiter = new LoginLimiter(loginRate, loginBurst, addressLoginRate, addressLoginBurst, loginLimiterEntries);
 
 		/* open multicast connection */
 		try
@@ -113,8 +187,9 @@ public class ServerMain
 		catch (IOException e)
 		{failServer("cannot open multicast connection");}
 
-		/* start running secret word handler */
-		Thread swHandler = new SWHandler(secretWord, swContent, wordsFile, wordLength, nextSWTime, gameNo);
+		/* start running secret word handler, keeping statistics of the last games */
+		games = new GameHistory(gameHistorySize, wordleMaxAttempts);
+		Thread swHandler = new SWHandler(secretWord, games, wordsFile, wordLength, nextSWTime, guessCacheSize);
 		swHandler.start();
 
 		/* initiliaze server listener for accepting client connections */
@@ -122,122 +197,124 @@ public class ServerMain
 		catch (IOException e)
 		{failServer("cannot open or register server listener", mcSocket);}
 
+		/* start running reactors */
+		try {initReactors();}
+		catch (IOException e)
+		{failServer("cannot open reactors selectors", mcSocket);}
+
 		/* start running shutdown controller */
-		Thread shutdown = new Shutdown(listen, stop, usersDB, usersFile, shutTimeout);
+		Thread shutdown = new Shutdown(listen, stop, usersDB, journal, snapshotter, hasher, limiter, games, shutTimeout, reactors);
 		shutdown.start();
 
-		/* Handle new client connections or client requests */
-		Set<SelectionKey> selectedKeys;
-		Iterator<SelectionKey> keyIterator;
-		SelectionKey key;
+		/* accept new client connections, handing each one to the least loaded reactor */
 		while (true)
 		{
-			/* wait for operation requests */
-			try {selector.select();}
-			catch (IOException e) {continue;}
-
-			selectedKeys = selector.selectedKeys();
-			keyIterator = selectedKeys.iterator();
-			while (keyIterator.hasNext())
+			try
 			{
-				key = keyIterator.next();
-				keyIterator.remove();
-
-				/* if key is NOT valid */
-				if (!key.isValid()) {continue;}
-
-				/* if a new client wants to connect */
-				if (listen.get() && key.isAcceptable())
-				{
-					try
-					{
-						SocketChannel client = listener.accept();
-						client.configureBlocking(false);
-						client.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, new ClientStatus(clientID++));
-					}
-					catch (IOException e) {/* if client cannot be accepted or registered, just ignore it */}
-				}
+				SocketChannel client = listener.accept();
 
-				/* if a client wants to perform an operation */
-				else if (key.isReadable())
+				/* if server is shutting down, refuse new clients */
+				if (!listen.get())
 				{
-					try
-					{
-						/* retrieve date sent from client */
-						byte[] clientData = new ChannelReader((SocketChannel)key.channel()).read();
-						/* if client disconnected */
-						if (clientData == null)
-						{
-							/* close client communication */
-							try {((SocketChannel)key.channel()).close();}
-							catch (IOException e) {/* do nothing */}
-							key.cancel();
-
-							continue;
-						}
-
-						clientPool.execute(new ClientHandler(
-							clientData,
-							key, 
-							usersDB, 
-							maxLogPassAttempts, 
-							minPassLength, 
-							wordleMaxAttempts, 
-							secretWord.toString(), 
-							new HashMap<Character,ArrayList<Integer>>(swContent), 
-							wordLength, 
-							gameNo.get(), 
-							mcSocket,
-							groupAddr,
-							groupPort,
-							stop
-						));
-					}
-					catch (IOException e) {/* if cannot communicate with client, just ignore it */}
+					client.close();
+					continue;
 				}
 
-				/* if a client is ready to receive something from server */
-				else if (key.isWritable())
-				{
-					try
-					{
-						ChannelWriter toClient = new ChannelWriter((SocketChannel)key.channel());
-						ClientStatus clientStatus = (ClientStatus) key.attachment();
-						switch (clientStatus.canGetData())
-						{
-							case 1:
-								toClient.write(clientStatus.getAck());
-								break;
-							case 2:
-								toClient.write(clientStatus.getMessage());
-								break;
-							default:
-								break;
-						}
-					}
-					catch (IOException e) {/* if cannot communicate with client, just ignore it */}
-				}
+				leastLoaded().assign(client);
 			}
+			catch (IOException e) {/* if client cannot be accepted, just ignore it */}
+		}
+	}
+
+
+	/**
+	 * Handle a complete request read from a client - see Reactor.
+	 * Requests of the same client are handled one at a time and in order, see Mailbox.
+	 * Cheap, non-blocking steps are handled directly on the reactor thread, the others on clientPool.
+	 * @param key client's associated selection key.
+	 * @param request complete request frame read from client.
+	 */
+	static void dispatch(SelectionKey key, Frame request)
+	{
+		ClientHandler handler = new ClientHandler(
+			request,
+			key, 
+			usersDB, 
+			hasher,
+			limiter,
+			maxLogPassAttempts, 
+			minPassLength, 
+			wordleMaxAttempts, 
+			secretWord.get(), 
+			games,
+			wordLength, 
+			mcSocket,
+			groupAddr,
+			groupPort,
+			stop
+		);
+		((ClientStatus) key.attachment()).getMailbox().runOrSubmit(handler, handler::isCheap);
+	}
+
+
+	/**
+	 * Create the executor for handling client requests, according to executionMode.
+	 * @return the new executor.
+	 * @throws UnsupportedOperationException if virtual threads are requested but not available.
+	 */
+	private static ExecutorService newClientPool() throws UnsupportedOperationException
+	{
+		if (executionMode.equals("pool"))
+			return Executors.newCachedThreadPool();
+
+		/* virtual threads (Java 21+) are looked up at runtime, so that pool mode keeps working on older JVMs */
+		try {return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);}
+		catch (ReflectiveOperationException e)
+		{throw new UnsupportedOperationException();}
+	}
+
+	/**
+	 * Start reactors, each one with its own selector.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static void initReactors() throws IOException
+	{
+		reactors = new Reactor[reactorsNo];
+		for (int i = 0; i < reactorsNo; i++)
+		{
+			reactors[i] = new Reactor(i, clientPool);
+			reactors[i].start();
+		}
+	}
+
+	/**
+	 * @return the reactor with the lowest number of connected clients.
+	 */
+	private static Reactor leastLoaded()
+	{
+		Reactor chosen = reactors[0];
+		for (int i = 1; i < reactors.length; i++)
+		{
+			if (reactors[i].getLoad() < chosen.getLoad())
+				chosen = reactors[i];
 		}
+		return chosen;
 	}
 
 
 	/**
-	 * Initiliaze selector and register server socket.
+	 * Initiliaze server listener.
 	 * @throws IOException if an I/O error occurs.
 	 */
 	private static void initListener() throws IOException
 	{
-		selector = selector.open();
 		listener = ServerSocketChannel.open();
 		listener.bind(new InetSocketAddress("localhost", serverPort));
-		listener.configureBlocking(false);
-		listener.register(selector, SelectionKey.OP_ACCEPT, null);
 	}
 
 
 	/**
-	 * Restore backed up users database, if existent.
+	 * Restore backed up users database (json or binary), if existent, then replay the changes journaled after the backup.
 	 * @throws FileNotFoundException if users backup file is inexistent or not accessible.
 	 * @throws IOException if an I/O error occurs.
 	 * @throws JsonParseException if users backup file is corrupted.
@@ -247,14 +324,14 @@ public class ServerMain
 		FileReader jsonFile;
 		String adminAnswer;
 
-		/* try to open users json file */
+		/* try to open users backup file */
 		try {jsonFile = new FileReader(usersFile);}
 		catch (FileNotFoundException e)
 		{
 			do
 			{
 				/* ask what to do */
-				System.out.println("Users json file inexistent or not accessible, is this normal? (yes/no)");
+				System.out.println("Users backup file inexistent or not accessible, is this normal? (yes/no)");
 				adminAnswer = adminInput.nextLine();
 
 				if (adminAnswer.equals("no"))
@@ -262,25 +339,42 @@ public class ServerMain
 				if (adminAnswer.equals("yes"))
 				{
 					/* nothing to restore */
-					return;
+					jsonFile = null;
+					break;
 				}
 			} while (true);
 		}
 
-		/* restore users database from json file */
-		Type userType = new TypeToken<User>(){}.getType();
-		Gson gson = new Gson();
-		JsonReader reader = new JsonReader(jsonFile);
-		User user;
+		/* restore users database from binary file (see UsersSnapshot), decoded in parallel */
+		if (jsonFile != null && UsersSnapshot.isBinary(usersFile))
+		{
+			jsonFile.close();
+			UsersSnapshot.load(usersFile, usersDB);
+		}
 
-		reader.beginArray();
-		while (reader.hasNext())
+		/* restore users database from json file */
+		else if (jsonFile != null)
 		{
-			user = gson.fromJson(reader, userType);
-			usersDB.put(user.getName(), user);
+			Type userType = new TypeToken<User>(){}.getType();
+			Gson gson = new Gson();
+			JsonReader reader = new JsonReader(jsonFile);
+			User user;
+
+			reader.beginArray();
+			while (reader.hasNext())
+			{
+				user = gson.fromJson(reader, userType);
+				usersDB.restore(user);
+			}
+			reader.endArray();
+			reader.close();
 		}
-		reader.endArray();
-		reader.close();
+
+		/* replay changes journaled after the backup (if server crashed), then keep journaling new ones */
+		long[] journalState = Journal.replay(journalFile, usersDB, wordleMaxAttempts);
+		journal = new Journal(journalFile, (int) journalState[0], journalState[1], journalState[2], journalSyncInterval);
+		journal.start();
+		usersDB.setJournal(journal);
 	}
 
 
@@ -302,27 +396,76 @@ public class ServerMain
 		/* read configuration file */
 		shutTimeout = Integer.parseInt(configData.getProperty("shutTimeout"));
 		wordsFilename = configData.getProperty("wordsFilename");
+		wordsMode = configData.getProperty("wordsMode", "heap");
 		usersFile = configData.getProperty("usersFile");
+		usersFormat = configData.getProperty("usersFormat", "binary");
+		userStorage = configData.getProperty("userStorage", "heap");
+		userStoreFile = configData.getProperty("userStoreFile", "usersStore.dat");
+		userCacheSize = Integer.parseInt(configData.getProperty("userCacheSize", "100000"));
+		reservationTimeout = Integer.parseInt(configData.getProperty("reservationTimeout", "300"));
+		maxReservations = Integer.parseInt(configData.getProperty("maxReservations", "10000"));
+		journalFile = configData.getProperty("journalFile", "usersJournal.log");
+		journalSyncInterval = Integer.parseInt(configData.getProperty("journalSyncInterval", "0"));
+		snapshotInterval = Integer.parseInt(configData.getProperty("snapshotInterval", "10"));
+		snapshotShards = Integer.parseInt(configData.getProperty("snapshotShards", "0"));
+		hashThreads = Integer.parseInt(configData.getProperty("hashThreads", "0"));
+		hashQueueSize = Integer.parseInt(configData.getProperty("hashQueueSize", "256"));
+		hashIterations = Integer.parseInt(configData.getProperty("hashIterations", "100000"));
+		loginRate = Integer.parseInt(configData.getProperty("loginRate", "10"));
+		loginBurst = Integer.parseInt(configData.getProperty("loginBurst", "5"));
+		addressLoginRate = Integer.parseInt(configData.getProperty("addressLoginRate", "60"));
+		addressLoginBurst = Integer.parseInt(configData.getProperty("addressLoginBurst", "20"));
+		loginLimiterEntries = Integer.parseInt(configData.getProperty("loginLimiterEntries", "100000"));
+		leaderboardMinGames = Integer.parseInt(configData.getProperty("leaderboardMinGames", "10"));
+		leaderboardSize = Integer.parseInt(configData.getProperty("leaderboardSize", "10"));
 		maxLogPassAttempts = Integer.parseInt(configData.getProperty("maxLogPassAttempts"));
 		minPassLength = Integer.parseInt(configData.getProperty("minPassLength"));
+		executionMode = configData.getProperty("executionMode", "pool");
 		groupAddr = InetAddress.getByName(configData.getProperty("groupAddr"));
 		groupPort = Integer.parseInt(configData.getProperty("groupPort"));
 		serverPort = Integer.parseInt(configData.getProperty("serverPort"));
+		reactorsNo = Integer.parseInt(configData.getProperty("reactors", "0"));
 		wordLength = Integer.parseInt(configData.getProperty("WORDLE_WordLength"));
 		wordleMaxAttempts = Integer.parseInt(configData.getProperty("WORDLE_MaxAttempts"));
 		nextSWTime = Integer.parseInt(configData.getProperty("WORDLE_nextWordTime"));
+		guessCacheSize = Integer.parseInt(configData.getProperty("WORDLE_guessCacheSize", "4096"));
+		gameHistorySize = Integer.parseInt(configData.getProperty("WORDLE_gameHistorySize", "10"));
 
 		/* check read data */
 		if (shutTimeout < 0) throw new IllegalArgumentException();
 		if (wordsFilename == null) throw new IllegalArgumentException();
+		if (!wordsMode.equals("heap") && !wordsMode.equals("mmap")) throw new IllegalArgumentException();
 		if (usersFile == null) throw new IllegalArgumentException();
+		if (!usersFormat.equals("binary") && !usersFormat.equals("json")) throw new IllegalArgumentException();
+		if (!userStorage.equals("heap") && !userStorage.equals("offheap")) throw new IllegalArgumentException();
+		if (userCacheSize < 1) throw new IllegalArgumentException();
+		if (reservationTimeout < 1) throw new IllegalArgumentException();
+		if (maxReservations < 1) throw new IllegalArgumentException();
+		if (journalSyncInterval < 0) throw new IllegalArgumentException();
+		if (snapshotInterval < 0) throw new IllegalArgumentException();
+		if (snapshotShards < 0) throw new IllegalArgumentException();
+		if (snapshotShards == 0) snapshotShards = Runtime.getRuntime().availableProcessors();
+		if (hashThreads < 0) throw new IllegalArgumentException();
+		if (hashThreads == 0) hashThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		if (hashQueueSize < 1) throw new IllegalArgumentException();
+		if (hashIterations < 1) throw new IllegalArgumentException();
+		if (loginRate < 1 || loginBurst < 1) throw new IllegalArgumentException();
+		if (addressLoginRate < 1 || addressLoginBurst < 1) throw new IllegalArgumentException();
+		if (loginLimiterEntries < 1) throw new IllegalArgumentException();
+		if (leaderboardMinGames < 1) throw new IllegalArgumentException();
+		if (leaderboardSize < 1 || leaderboardSize > 100) throw new IllegalArgumentException();
 		if (maxLogPassAttempts < 1) throw new IllegalArgumentException();
 		if (minPassLength < 1) throw new IllegalArgumentException();
+		if (!executionMode.equals("pool") && !executionMode.equals("virtual")) throw new IllegalArgumentException();
 		if (!groupAddr.isMulticastAddress()) throw new IllegalArgumentException();
 		if (groupPort < 1024 || groupPort > 65535) throw new IllegalArgumentException();
 		if (serverPort < 1024 || serverPort > 65535) throw new IllegalArgumentException();
-		if (wordLength < 1) throw new IllegalArgumentException();
+		if (reactorsNo < 0) throw new IllegalArgumentException();
+		if (reactorsNo == 0) reactorsNo = Runtime.getRuntime().availableProcessors();
+		if (wordLength < 1 || wordLength > WordsFileHandler.MAX_PACKED_LENGTH || wordLength > Hint.MAX_LENGTH || wordLength > OffHeapUserStore.MAX_WORD) throw new IllegalArgumentException();
 		if (nextSWTime < 1) throw new IllegalArgumentException();
+		if (guessCacheSize < 0 || guessCacheSize > (1 << 24)) throw new IllegalArgumentException();
+		if (gameHistorySize < 1 || gameHistorySize > 1000) throw new IllegalArgumentException();
 	}
 
 
@@ -8,8 +8,8 @@ public class Share
 	private int gameNo;
 	/* attempts that took user to finish the game */
 	private int attemptsNo = 0;
-	/* game scheme built from hints */
-	private String[] scheme;
+	/* game scheme built from packed hints - see Hint (sent as rendered hints, see JsonCodecs) */
+	private int[] scheme;
 	/* maximum attempts for a user to guess secret word */
 	private int wordleMaxAttempts;
 
@@ -23,15 +23,32 @@ public class Share
 	{
 		this.user = user;
 		this.gameNo = gameNo;
-		this.scheme = new String[maxAttempts];
+		this.scheme = new int[maxAttempts];
+		this.wordleMaxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Restore a share object received from the server - see JsonCodecs.
+	 * @param user user name.
+	 * @param gameNo number of the game.
+	 * @param attemptsNo attempts that took user to finish the game.
+	 * @param scheme game scheme built from packed hints.
+	 * @param maxAttempts maximum attempts for a user to guess secret word.
+	 */
+	public Share(String user, int gameNo, int attemptsNo, int[] scheme, int maxAttempts)
+	{
+		this.user = user;
+		this.gameNo = gameNo;
+		this.attemptsNo = attemptsNo;
+		this.scheme = scheme;
 		this.wordleMaxAttempts = maxAttempts;
 	}
 
 	/**
 	 * Add a new attempt to guess secret word.
-	 * @param attempt hint representing comprarison between guessed and secret word.
+	 * @param attempt packed hint representing comprarison between guessed and secret word.
 	 */
-	public void newAttempt(String attempt)
+	public void newAttempt(int attempt)
 	{
 		scheme[attemptsNo] = attempt;
 		attemptsNo++;
@@ -44,6 +61,8 @@ public class Share
 	/* attemptsNo */
 	public int getAttempts() {return attemptsNo;}
 	public String getAttemptsString() {return (attemptsNo + "/" + wordleMaxAttempts);}
-	/* scheme */
-	public String[] getGameScheme() {return Arrays.copyOf(scheme, attemptsNo);}
-}
\ No newline at end of file
+	/* wordleMaxAttempts */
+	public int getMaxAttempts() {return wordleMaxAttempts;}
+	/* scheme (packed hints, see Hint.render for displaying them) */
+	public int[] getGameScheme() {return Arrays.copyOf(scheme, attemptsNo);}
+}
@@ -1,12 +1,6 @@
-import java.util.HashMap;
 import java.util.Scanner;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.lang.Thread;
-import java.lang.reflect.Type;
-import java.io.FileWriter;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.stream.JsonWriter;
 
 
 public class Shutdown extends Thread
@@ -18,11 +12,21 @@ public class Shutdown extends Thread
 	/* reference - close all client connections */
 	private AtomicBoolean stop;
 	/* reference - local users database */
-	private HashMap<String,User> usersDB;
-	/* users backup file */
-	private String usersFile;
+	private UserRepository usersDB;
+	/* reference - users journal */
+	private Journal journal;
+	/* reference - users database snapshotter */
+	private Snapshotter snapshotter;
+	/* reference - password hasher (for printing its counters) */
+	private PasswordHasher hasher;
+	/* reference - login attempts limiter (for printing its counters) */
+	private LoginLimiter limiter;
+	/* reference - statistics of the last games (for printing them) */
+	private GameHistory games;
 	/* seconds to wait before disconnecting from all connected clients */
 	private int shutTimeout;
+	/* reference - server reactors (for printing their counters) */
+	private Reactor[] reactors;
 
 
 	/**
@@ -30,16 +34,26 @@ public class Shutdown extends Thread
 	 * @param listen tells the server listen for new clients or not.
 	 * @param stop tells the server to disconnect from all connected clients.
 	 * @param usersDB users databse.
-	 * @param usersFile users backup file name.
+	 * @param journal users journal.
+	 * @param snapshotter users database snapshotter (for the final backup).
+	 * @param hasher password hasher.
+	 * @param limiter login attempts limiter.
+	 * @param games statistics of the last games.
 	 * @param shutTimeout seconds to wait before disconnecting from all connected clients.
+	 * @param reactors server reactors.
 	 */
-	public Shutdown(AtomicBoolean listen, AtomicBoolean stop, HashMap<String,User> usersDB, String usersFile, int shutTimeout)
+	public Shutdown(AtomicBoolean listen, AtomicBoolean stop, UserRepository usersDB, Journal journal, Snapshotter snapshotter, PasswordHasher hasher, LoginLimiter limiter, GameHistory games, int shutTimeout, Reactor[] reactors)
 	{
 		this.listen = listen;
 		this.stop = stop;
 		this.usersDB = usersDB;
-		this.usersFile = usersFile;
+		this.journal = journal;
+		this.snapshotter = snapshotter;
+		this.hasher = hasher;
+		this.limiter = limiter;
+		this.games = games;
 		this.shutTimeout = shutTimeout;
+		this.reactors = reactors;
 	}
 
 	@Override
@@ -49,10 +63,24 @@ public class Shutdown extends Thread
 		{
 			if (adminInput.hasNextLine())
 			{
+				String command = adminInput.nextLine();
 				/* if admin wants to shut down this server */
-				if (adminInput.nextLine().equals("shutdown"))
+				if (command.equals("shutdown"))
 					break;
-				System.out.println("Type \'shutdown\' to start the gradual shutdown of this server.");
+				/* if admin wants to see server counters */
+				if (command.equals("stats"))
+				{
+					printStats();
+					continue;
+				}
+				/* if admin wants to see statistics of the last games */
+				if (command.equals("games"))
+				{
+					for (GameReport report : games.getReports(true))
+						System.out.println(report);
+					continue;
+				}
+				System.out.println("Type \'shutdown\' to start the gradual shutdown of this server, \'stats\' to see server counters, \'games\' to see statistics of the last games.");
 			}
 		}
 		try
@@ -79,24 +107,19 @@ public class Shutdown extends Thread
 			Thread.sleep(10000); // 10 seconds
 
 			/* log all users out */
-			usersDB.forEach((name,user) -> user.setLogStatus(false));
+			usersDB.logOutAll();
 
 			/* inform admin */
 			System.out.println("...logged all users out...");
 
-			/* export usersDB to json users file */
-			FileWriter jsonFile = new FileWriter(usersFile);
-			Type userType = new TypeToken<User>(){}.getType();
-			Gson gson = new Gson();
-			JsonWriter writer = new JsonWriter(jsonFile);
+			/* write pending journal records */
+			journal.close();
 
-			writer.beginArray();
-			usersDB.forEach((name,user) -> gson.toJson(user, userType, writer));
-			writer.endArray();
-			writer.close();
+			/* export usersDB to users backup file (journal segments are deleted, as covered by the backup) */
+			snapshotter.snapshot();
 
 			/* inform admin */
-			System.out.println("...users database backed up to file: " + usersFile + "...");
+			System.out.println("...users database backed up...");
 
 			/* terminate execution, inform admin */
 			System.out.println("... terminated shutdown process.");
@@ -108,4 +131,19 @@ public class Shutdown extends Thread
 			System.exit(1);
 		}
 	}
+
+	/**
+	 * Print server counters.
+	 */
+	private void printStats()
+	{
+		for (Reactor reactor : reactors)
+			System.out.println(reactor.getCounters());
+		System.out.println(GuessCache.getCounters());
+		System.out.println(usersDB.getCounters());
+		System.out.println(hasher.getCounters());
+		System.out.println(limiter.getCounters());
+		System.out.println(journal.getCounters());
+		System.out.println(snapshotter.getCounters());
+	}
 }
\ No newline at end of file
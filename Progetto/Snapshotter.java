@@ -0,0 +1,244 @@
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+
+public class Snapshotter extends Thread
+{
+	/* reference - local users database */
+	private UserRepository usersDB;
+	/* users backup file */
+	private String usersFile;
+	/* users backup format: "binary" (see UsersSnapshot) or "json" */
+	private String usersFormat;
+	/* length of users stats arrays (maximum attempts for a user to guess secret word) */
+	private int statsLength;
+	/* reference - users journal */
+	private Journal journal;
+	/* minutes between two snapshots, 0 for snapshots at shutdown only */
+	private int snapshotInterval;
+	/* number of shards serialized in parallel */
+	private int shards;
+	/* executor for serializing shards */
+	private ExecutorService shardPool;
+
+	/* counters - snapshots taken, users and bytes of the last snapshot, its duration (milliseconds) */
+	private volatile long snapshots = 0;
+	private volatile long lastUsers = 0;
+	private volatile long lastBytes = 0;
+	private volatile long lastTime = 0;
+
+
+	/**
+	 * Instantiate a new users database snapshotter.
+	 * @param usersDB users database.
+	 * @param usersFile users backup file name.
+	 * @param usersFormat users backup format: "binary" or "json".
+	 * @param statsLength length of users stats arrays (maximum attempts for a user to guess secret word).
+	 * @param journal users journal.
+	 * @param snapshotInterval minutes between two snapshots, 0 for snapshots at shutdown only.
+	 * @param shards number of shards serialized in parallel.
+	 */
+	public Snapshotter(UserRepository usersDB, String usersFile, String usersFormat, int statsLength, Journal journal, int snapshotInterval, int shards)
+	{
+		this.usersDB = usersDB;
+		this.usersFile = usersFile;
+		this.usersFormat = usersFormat;
+		this.statsLength = statsLength;
+		this.journal = journal;
+		this.snapshotInterval = snapshotInterval;
+		this.shards = shards;
+		this.shardPool = Executors.newFixedThreadPool(shards);
+		setDaemon(true);
+	}
+
+	@Override
+	public void run()
+	{
+		if (snapshotInterval == 0)
+			return;
+
+		try
+		{
+			while (true)
+			{
+				/* wait */
+				Thread.sleep(snapshotInterval * 60000L);
+
+				try {snapshot();}
+				catch (IOException e)
+				{System.err.println("ERROR: users database snapshot failed, will retry at next one.");}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			System.err.println("FATAL ERROR: failure while waiting for next users database snapshot.");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Back up users database to users backup file, while users keep playing.
+	 * The journal is rotated first, so that every change in its previous segments is included in the snapshot and
+	 * those segments can be deleted afterwards. Changes made meanwhile may be included as well: they are skipped when
+	 * replaying the journal, see User.getSeq.
+	 * Shards of users are serialized in parallel to part files, then joined in a temporary file that atomically
+	 * replaces users backup file (in binary format, each shard is a chunk - see UsersSnapshot).
+	 * @throws IOException if an I/O error occurs (users backup file is left untouched).
+	 * @throws InterruptedException if interrupted while waiting for shards.
+	 */
+	public synchronized void snapshot() throws IOException, InterruptedException
+	{
+		long start = System.currentTimeMillis();
+		int lastSegmentNo = journal.rotate();
+		List<User> users = usersDB.list();
+
+		/* serialize shards in parallel */
+		boolean binary = usersFormat.equals("binary");
+		ArrayList<Future<Boolean>> parts = new ArrayList<Future<Boolean>>(shards);
+		int[] shardUsers = new int[shards];
+		int shardSize = (users.size() + shards - 1) / shards;
+		for (int i = 0; i < shards; i++)
+		{
+			int from = Math.min(users.size(), i * shardSize);
+			int to = Math.min(users.size(), from + shardSize);
+			String partFile = partName(i);
+			shardUsers[i] = to - from;
+			if (binary)
+				parts.add(shardPool.submit(() -> {
+					UsersSnapshot.writeChunk(users, from, to, partFile, statsLength);
+					return to > from;
+				}));
+			else
+				parts.add(shardPool.submit(() -> writeShard(users, from, to, partFile)));
+		}
+
+		Path tmpPath = Paths.get(usersFile + ".tmp");
+		FileChannel out = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			/* wait for all shards */
+			boolean[] empty = new boolean[shards];
+			long[] partSizes = new long[shards];
+			for (int i = 0; i < shards; i++)
+			{
+				try {empty[i] = !parts.get(i).get();}
+				catch (ExecutionException e) {throw new IOException("cannot write users snapshot shard", e.getCause());}
+				partSizes[i] = Files.size(Paths.get(partName(i)));
+			}
+
+			/* join shards in a temporary file: header + chunks (binary) or [part 0,part 1,...] (json) */
+			boolean first = true;
+			if (binary)
+				UsersSnapshot.writeHeader(out, statsLength, partSizes, shardUsers);
+			else
+				out.write(ByteBuffer.wrap("[".getBytes()));
+			for (int i = 0; i < shards; i++)
+			{
+				if (!binary && empty[i])
+					continue;
+
+				if (!binary && !first)
+					out.write(ByteBuffer.wrap(",".getBytes()));
+				first = false;
+
+				FileChannel part = FileChannel.open(Paths.get(partName(i)), StandardOpenOption.READ);
+				long position = 0;
+				while (position < partSizes[i])
+					position += part.transferTo(position, partSizes[i] - position, out);
+				part.close();
+			}
+			if (!binary)
+				out.write(ByteBuffer.wrap("]".getBytes()));
+			out.force(true);
+			lastBytes = out.size();
+		}
+		finally
+		{
+			out.close();
+			for (int i = 0; i < shards; i++)
+				new File(partName(i)).delete();
+		}
+
+		/* replace previous snapshot at once */
+		Files.move(tmpPath, Paths.get(usersFile), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+		/* journal segments are covered by the snapshot now */
+		journal.deleteSegments(lastSegmentNo);
+
+		lastUsers = users.size();
+		lastTime = System.currentTimeMillis() - start;
+		snapshots++;
+	}
+
+	/**
+	 * @param shard shard number.
+	 * @return the name of the part file of a shard.
+	 */
+	private String partName(int shard)
+	{
+		return usersFile + ".part" + shard;
+	}
+
+	/**
+	 * Serialize a shard of users to a part file, as comma separated json objects.
+	 * Each user is serialized while holding its lock, so that it is consistent with its journal sequence number.
+	 * @param users all the users.
+	 * @param from first user of the shard.
+	 * @param to last user of the shard (excluded).
+	 * @param partFile part file name.
+	 * @return true if the shard contains at least one user.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static Boolean writeShard(List<User> users, int from, int to, String partFile) throws IOException
+	{
+		Type userType = new TypeToken<User>(){}.getType();
+		Gson gson = new Gson();
+		Writer writer = new BufferedWriter(new FileWriter(partFile), 1 << 16);
+		String json;
+
+		try
+		{
+			for (int i = from; i < to; i++)
+			{
+				User user = users.get(i);
+				synchronized (user) {json = gson.toJson(user, userType);}
+
+				if (i > from)
+					writer.write(',');
+				writer.write(json);
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+
+		return to > from;
+	}
+
+	/**
+	 * @return a printable summary of the snapshotter counters.
+	 */
+	public String getCounters()
+	{
+		return "snapshots: taken " + snapshots +
+			", last users " + lastUsers +
+			", last bytes " + lastBytes +
+			", last time " + lastTime + " ms";
+	}
+}
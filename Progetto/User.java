@@ -1,4 +1,5 @@
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class User
 {
@@ -6,12 +7,14 @@ public class User
 	private String name;
 	/* hash value of password */
 	private byte[] passwd;
-	/* log status */
-	private boolean loggedIn = true;
+	/* log status (a user can be logged in by one client at a time) */
+	private AtomicBoolean loggedIn = new AtomicBoolean(true);
 	/* last secret word play */
 	private String lastWord = null;
 	/* statistics */
 	private UserStats stats;
+	/* sequence number of the last journal record applied to this user - see Journal */
+	private long seq = 0;
 
 	/**
 	 * Create a new user.
@@ -26,16 +29,39 @@ public class User
 		this.stats = new UserStats(wordleMaxAttempts);
 	}
 
+	/**
+	 * Restore a user from a backup, logged out.
+	 * @param name user's name.
+	 * @param passwd hash value of user's password.
+	 * @param lastWord last secret word played (null if none).
+	 * @param stats user's statistics.
+	 * @param seq sequence number of the last journal record applied to the user.
+	 */
+	public User(String name, byte[] passwd, String lastWord, UserStats stats, long seq)
+	{
+		this.name = name;
+		this.passwd = passwd;
+		this.loggedIn.set(false);
+		this.lastWord = lastWord;
+		this.stats = stats;
+		this.seq = seq;
+	}
+
 	/* name */
 	public String getName() {return name;}
 	/* (copy of) passwd */
 	public byte[] getPasswd() {return Arrays.copyOf(passwd, passwd.length);}
+	public void setPasswd(byte[] newPasswd) {passwd = newPasswd;}
 	/* loggedIn */
-	public boolean getLogStatus() {return loggedIn;}
-	public void setLogStatus(boolean status) {loggedIn = status;}
+	public boolean getLogStatus() {return loggedIn.get();}
+	public boolean logIn() {return loggedIn.compareAndSet(false, true);}
+	public void logOut() {loggedIn.set(false);}
 	/* lastWord */
 	public String getLastWord() {return lastWord;}
 	public void setLastWord(String newWord) {lastWord = newWord;}
 	/* (reference to) stats */
 	public UserStats getStats() {return stats;}
+	/* seq */
+	public long getSeq() {return seq;}
+	public void setSeq(long lastSeq) {seq = lastSeq;}
 }
\ No newline at end of file
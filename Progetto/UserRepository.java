@@ -0,0 +1,275 @@
+import java.util.List;
+import java.util.function.Consumer;
+
+
+public class UserRepository
+{
+	/* registered users, by name - see HeapUserStore and OffHeapUserStore */
+	private final UserStore users;
+	/* names being chosen by clients in the middle of a registration */
+	private final Reservations reservations;
+	/* journal of users changes, for recovering them after a crash */
+	private Journal journal;
+	/* global leaderboards, updated at each game result */
+	private Leaderboard leaderboard;
+
+
+	/**
+	 * Instantiate a new users database.
+	 * @param store where registered users are kept.
+	 * @param reservations names reserved by clients in the middle of a registration.
+	 */
+	public UserRepository(UserStore store, Reservations reservations)
+	{
+		this.users = store;
+		this.reservations = reservations;
+	}
+
+	/**
+	 * @param name user name.
+	 * @return the user with the given name, or null if there is no such user.
+	 */
+	public User get(String name)
+	{
+		return users.get(name);
+	}
+
+	/**
+	 * @param name user name.
+	 * @return true if a user with the given name is registered.
+	 */
+	public boolean exists(String name)
+	{
+		return users.contains(name);
+	}
+
+	/**
+	 * Reserve a name for a registration, so that no other client can choose it in the meantime.
+	 * @param name the name to reserve.
+	 * @return the reservation, or null if the name is taken by a user, reserved by another client or not accepted by
+	 * the users store, or if there are too many reservations (see isReservationsFull).
+	 */
+	public Reservations.Reservation reserve(String name)
+	{
+		if (!users.accepts(name) || users.contains(name))
+			return null;
+
+		Reservations.Reservation reservation = reservations.reserve(name);
+		if (reservation == null)
+			return null;
+
+		/* a registration may have completed in between */
+		if (users.contains(name))
+		{
+			reservation.release();
+			return null;
+		}
+
+		return reservation;
+	}
+
+	/**
+	 * @return true if no more names can be reserved, until some registrations end.
+	 */
+	public boolean isReservationsFull()
+	{
+		return reservations.isFull();
+	}
+
+	/**
+	 * Start journaling users changes, once users database has been restored.
+	 * @param usersJournal the journal.
+	 */
+	public void setJournal(Journal usersJournal)
+	{
+		journal = usersJournal;
+	}
+
+	/**
+	 * Rank all users, then keep the leaderboards updated at each game result (once users database has been restored).
+	 * @param usersLeaderboard the (empty) leaderboards.
+	 */
+	public void setLeaderboard(Leaderboard usersLeaderboard)
+	{
+		users.view().forEach(user -> {
+			synchronized (user) {usersLeaderboard.update(user);}
+		});
+		leaderboard = usersLeaderboard;
+	}
+
+	/**
+	 * @param board the leaderboard - see Leaderboard.
+	 * @param name name of the requesting user.
+	 * @return the top players of the leaderboard, with the rank of the requesting user.
+	 */
+	public Ranking getRanking(int board, String name)
+	{
+		return leaderboard.getRanking(board, name);
+	}
+
+	/**
+	 * @param user the user.
+	 * @return json statistics of the user, encoded again only after its statistics changed - see UserStats.
+	 */
+	public byte[] getStatsJson(User user)
+	{
+		byte[] json = user.getStats().getJson();
+		if (json != null)
+			return json;
+		synchronized (user) {return user.getStats().toJson();}
+	}
+
+	/**
+	 * Register a new user, turning the reservation of its name into it.
+	 * @param user the new user.
+	 * @param reservation reservation of the user's name.
+	 * @return true if the user was registered, false if the reservation expired and was taken over by another client.
+	 */
+	public boolean register(User user, Reservations.Reservation reservation)
+	{
+		boolean registered = reservations.commit(reservation, () -> users.add(user));
+
+		if (registered)
+			synchronized (user) {user.setSeq(journal.register(user));}
+		return registered;
+	}
+
+	/**
+	 * Start a new game for a user, unless the user already played its secret word.
+	 * @param user the user.
+	 * @param word secret word of the game.
+	 * @return true if the game was started, false if the user already played it.
+	 */
+	public boolean startGame(User user, String word)
+	{
+		synchronized (user)
+		{
+			if (word.equals(user.getLastWord()))
+				return false;
+
+			user.setLastWord(word);
+			user.setSeq(journal.start(user, word));
+		}
+		users.update(user);
+		return true;
+	}
+
+	/**
+	 * Record a game won by a user.
+	 * @param user the user.
+	 * @param guessNo number of attempts that took user to win.
+	 */
+	public void addVictory(User user, int guessNo)
+	{
+		synchronized (user)
+		{
+			user.getStats().addVictory(guessNo);
+			user.setSeq(journal.victory(user, guessNo));
+			leaderboard.update(user);
+		}
+		users.update(user);
+	}
+
+	/**
+	 * Record a game lost by a user.
+	 * @param user the user.
+	 */
+	public void addDefeat(User user)
+	{
+		synchronized (user)
+		{
+			user.getStats().addDefeat();
+			user.setSeq(journal.defeat(user));
+			leaderboard.update(user);
+		}
+		users.update(user);
+	}
+
+	/**
+	 * Replace the hash value of a user's password (a legacy one, see PasswordHasher).
+	 * The change is not journaled: if lost in a crash, the legacy hash value is still valid and is replaced again
+	 * at next login.
+	 * @param user the user.
+	 * @param passwd new hash value of the user's password.
+	 */
+	public void setPasswd(User user, byte[] passwd)
+	{
+		synchronized (user) {user.setPasswd(passwd);}
+		users.update(user);
+	}
+
+	/**
+	 * Size the database for the users about to be restored, to avoid resizing it while restoring them.
+	 * To be called at startup only, while the database is still empty.
+	 * @param expected expected number of users.
+	 */
+	public void presize(int expected)
+	{
+		users.presize(expected);
+	}
+
+	/**
+	 * Add a user restored from backup (no reservation needed), logged out.
+	 * @param user the restored user.
+	 */
+	public void restore(User user)
+	{
+		user.logOut();
+		users.restore(user);
+	}
+
+	/**
+	 * Report the changes made to a user outside of the methods above (journal replay).
+	 * @param user the changed user.
+	 */
+	public void update(User user)
+	{
+		users.update(user);
+	}
+
+	/**
+	 * Log a user in, unless another client is logged in as this user.
+	 * @param name user name.
+	 * @return the logged in user, or null if there is no such user or it is already logged in.
+	 */
+	public User logIn(String name)
+	{
+		return users.logIn(name);
+	}
+
+	/**
+	 * Log all users out.
+	 */
+	public void logOutAll()
+	{
+		users.logOutAll();
+	}
+
+	/**
+	 * @return a view of all registered users, to be read sequentially (weakly consistent with concurrent registrations).
+	 */
+	public List<User> list()
+	{
+		return users.view();
+	}
+
+	/**
+	 * Perform an action on all registered users (weakly consistent with concurrent registrations).
+	 * @param action the action to perform.
+	 */
+	public void forEach(Consumer<User> action)
+	{
+		users.view().forEach(action);
+	}
+
+	/* number of registered users */
+	public int size() {return users.size();}
+
+	/**
+	 * @return a printable summary of the users store, reservations and leaderboards counters.
+	 */
+	public String getCounters()
+	{
+		return users.getCounters() + "\n" + reservations.getCounters() + "\n" + leaderboard.getCounters();
+	}
+}
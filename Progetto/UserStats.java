@@ -3,24 +3,21 @@ import java.util.Arrays;
 
 public class UserStats
 {
-	/* number of games played */
-	private int gamesNo = 0;
-	/* number of victories */
+	/* number of victories (counters only: derived values are computed when read) */
 	private int victories = 0;
 	/* number of defeats */
 	private int defeats = 0;
-	/* rate of victories */
-	private float victoriesPerc = 0;
 	/* last streak of victories */
 	private int lastStreak = 0;
 	/* longest streak of victories */
 	private int maxStreak = 0;
 	/* keep track of how many attempts took user to win played games */
 	private int[] guesses;
-	/* keep track of attempts distribution */
-	private float[] guessDistr;
 	/* attempts that took user to win last game, if won */
 	private int lastGuessNo;
+	/* json statistics, null when counters changed since last encoded (not part of backups) */
+	private transient volatile byte[] json;
+
 
 	/**
 	 * Instantiate new user statistics object.
@@ -29,9 +26,25 @@ public class UserStats
 	public UserStats(int maxAttempts)
 	{
 		guesses = new int[maxAttempts];
-		Arrays.fill(guesses, 0);
-		guessDistr = new float[maxAttempts];
-		Arrays.fill(guessDistr, 0);
+	}
+
+	/**
+	 * Restore user statistics from their counters.
+	 * @param victories number of victories.
+	 * @param defeats number of defeats.
+	 * @param lastStreak last streak of victories.
+	 * @param maxStreak longest streak of victories.
+	 * @param lastGuessNo attempts that took user to win last game, if won.
+	 * @param guesses how many attempts took user to win played games.
+	 */
+	public UserStats(int victories, int defeats, int lastStreak, int maxStreak, int lastGuessNo, int[] guesses)
+	{
+		this.victories = victories;
+		this.defeats = defeats;
+		this.lastStreak = lastStreak;
+		this.maxStreak = maxStreak;
+		this.lastGuessNo = lastGuessNo;
+		this.guesses = guesses;
 	}
 
 	/**
@@ -42,39 +55,59 @@ public class UserStats
 		victories++;
 		lastStreak++;
 		lastGuessNo = guessNo;
-		update(true);
+		guesses[guessNo-1]++;
+		if (maxStreak < lastStreak)
+			maxStreak = lastStreak;
+		json = null;
 	}
 
 	public void addDefeat()
 	{
 		defeats++;
 		lastStreak = 0;
-		update(false);
+		json = null;
 	}
 
-	private void update(boolean victory)
+	/**
+	 * Get json statistics, encoding them only if counters changed since last call.
+	 * To be called while holding the user lock (see UserRepository), so that no change is missed.
+	 * @return json statistics, not to be modified.
+	 */
+	public byte[] toJson()
 	{
-		gamesNo = victories + defeats;
-		victoriesPerc = (float)victories / (float)gamesNo * 100;
-		if (maxStreak < lastStreak)
-			maxStreak = lastStreak;
-		
-		if (victory)
-		{
-			/* update guess distribution */
-			guesses[lastGuessNo-1]++;
-			for (int i = 0; i < guessDistr.length; i++)
-				guessDistr[i] = (float)(guesses[i]) / (float)victories * 100;
-		}
+		byte[] encoded = json;
+		if (encoded == null)
+			json = encoded = JsonCodecs.gson.toJson(this).getBytes();
+		return encoded;
 	}
+
+	/* json, if encoded and still valid (null otherwise) */
+	public byte[] getJson() {return json;}
+
 	/* gamesNo */
-	public int getGames() {return gamesNo;}
+	public int getGames() {return victories + defeats;}
+	/* victories */
+	public int getVictories() {return victories;}
+	/* defeats */
+	public int getDefeats() {return defeats;}
+	/* lastGuessNo */
+	public int getLastGuessNo() {return lastGuessNo;}
+	/* (copy of) guesses */
+	public int[] getGuesses() {return Arrays.copyOf(guesses, guesses.length);}
+	/* guesses length (maximum attempts) */
+	public int getMaxAttempts() {return guesses.length;}
 	/* victoriesPerc */
-	public float getVictoriesPerc() {return victoriesPerc;}
+	public float getVictoriesPerc() {return (getGames() == 0) ? 0 : (float)victories / (float)getGames() * 100;}
 	/* lastStreak */
 	public int getLastStreak() {return lastStreak;}
 	/* maxStreak */
 	public int getMaxStreak() {return maxStreak;}
-	/* (reference to) guessDistr */
-	public float[] getGuessDistribution() {return Arrays.copyOf(guessDistr, guessDistr.length);}
-}
\ No newline at end of file
+	/* guessDistr */
+	public float[] getGuessDistribution()
+	{
+		float[] guessDistr = new float[guesses.length];
+		for (int i = 0; victories > 0 && i < guessDistr.length; i++)
+			guessDistr[i] = (float)(guesses[i]) / (float)victories * 100;
+		return guessDistr;
+	}
+}
@@ -0,0 +1,74 @@
+import java.util.List;
+
+
+public interface UserStore
+{
+	/**
+	 * @param name user name.
+	 * @return the user with the given name, or null if there is no such user.
+	 */
+	User get(String name);
+
+	/**
+	 * @param name user name.
+	 * @return true if a user with the given name is stored.
+	 */
+	boolean contains(String name);
+
+	/**
+	 * @param name user name.
+	 * @return true if a user with the given name can be stored.
+	 */
+	boolean accepts(String name);
+
+	/**
+	 * Add a new user, unless its name is already taken.
+	 * @param user the new user.
+	 * @return true if the user was added.
+	 */
+	boolean add(User user);
+
+	/**
+	 * Add a user restored from backup, replacing any user with the same name.
+	 * @param user the restored user.
+	 */
+	void restore(User user);
+
+	/**
+	 * Report the changes made to a user, so that they are not lost if the store keeps a copy of it.
+	 * Users returned by a store are shared: they are changed while holding their lock - see UserRepository.
+	 * @param user the changed user.
+	 */
+	void update(User user);
+
+	/**
+	 * Log a user in, keeping it available until it logs out.
+	 * @param name user name.
+	 * @return the logged in user, or null if there is no such user or it is already logged in.
+	 */
+	User logIn(String name);
+
+	/**
+	 * Log all users out.
+	 */
+	void logOutAll();
+
+	/**
+	 * Size the store for the users about to be restored, while it is still empty.
+	 * @param expected expected number of users.
+	 */
+	void presize(int expected);
+
+	/**
+	 * @return a view of all stored users, to be read sequentially (weakly consistent with concurrent registrations).
+	 */
+	List<User> view();
+
+	/* number of stored users */
+	int size();
+
+	/**
+	 * @return a printable summary of the store counters.
+	 */
+	String getCounters();
+}
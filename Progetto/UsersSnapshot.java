@@ -0,0 +1,302 @@
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+
+public class UsersSnapshot
+{
+	/* binary format (numbers big-endian): header (magic, version, stats arrays length, chunks number: int; users number: long),
+	   chunks index (for each chunk: offset, size: long; users number: int), then chunks of independent user records
+	   (so that they can be written and decoded in parallel) - see writeUser */
+	/* magic number of a binary users backup ("WUSR") */
+	private static final int MAGIC = 0x57555352;
+	/* current format version */
+	private static final int VERSION = 1;
+	/* size of the header */
+	private static final int HEADER_SIZE = 24;
+	/* size of a chunk index entry */
+	private static final int INDEX_ENTRY_SIZE = 20;
+	/* users per chunk written by the converter */
+	private static final int CONVERTER_CHUNK = 1 << 16;
+
+
+	/**
+	 * Verify if a users backup file is in binary format.
+	 * @param usersFile users backup file name.
+	 * @return true if the file starts with the binary format magic number.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static boolean isBinary(String usersFile) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new FileInputStream(usersFile));
+		try {return in.readInt() == MAGIC;}
+		catch (EOFException e) {return false;}
+		finally {in.close();}
+	}
+
+	/**
+	 * Write a chunk of users to a part file.
+	 * Each user is encoded while holding its lock, so that it is consistent with its journal sequence number.
+	 * @param users all the users.
+	 * @param from first user of the chunk.
+	 * @param to last user of the chunk (excluded).
+	 * @param partFile part file name.
+	 * @param statsLength length of the stats arrays (maximum attempts for a user to guess secret word).
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeChunk(List<User> users, int from, int to, String partFile, int statsLength) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partFile), 1 << 16));
+		try
+		{
+			for (int i = from; i < to; i++)
+			{
+				User user = users.get(i);
+				synchronized (user) {writeUser(out, user, statsLength);}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Encode a single user record: name length (short), name (UTF-8), password hash length (byte), password hash,
+	 * last word length (short, -1 if none), last word, journal sequence number (long), victories, defeats,
+	 * last streak, max streak, last guess number (int each), guesses (statsLength ints).
+	 * @param out output stream.
+	 * @param user the user.
+	 * @param statsLength length of the stats arrays.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	private static void writeUser(DataOutputStream out, User user, int statsLength) throws IOException
+	{
+		byte[] name = user.getName().getBytes(StandardCharsets.UTF_8);
+		byte[] passwd = user.getPasswd();
+		byte[] lastWord = (user.getLastWord() == null) ? null : user.getLastWord().getBytes(StandardCharsets.UTF_8);
+		UserStats stats = user.getStats();
+		int[] guesses = Arrays.copyOf(stats.getGuesses(), statsLength);
+
+		out.writeShort(name.length);
+		out.write(name);
+		out.writeByte(passwd.length);
+		out.write(passwd);
+		out.writeShort((lastWord == null) ? -1 : lastWord.length);
+		if (lastWord != null)
+			out.write(lastWord);
+		out.writeLong(user.getSeq());
+		out.writeInt(stats.getVictories());
+		out.writeInt(stats.getDefeats());
+		out.writeInt(stats.getLastStreak());
+		out.writeInt(stats.getMaxStreak());
+		out.writeInt(stats.getLastGuessNo());
+		for (int guess : guesses)
+			out.writeInt(guess);
+	}
+
+	/**
+	 * Write header and chunks index of a binary users backup.
+	 * @param out users backup file, positioned at its beginning.
+	 * @param statsLength length of the stats arrays.
+	 * @param chunkSizes size of each chunk.
+	 * @param chunkUsers users number of each chunk.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static void writeHeader(FileChannel out, int statsLength, long[] chunkSizes, int[] chunkUsers) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + INDEX_ENTRY_SIZE * chunkSizes.length);
+		long usersNo = 0;
+		for (int users : chunkUsers)
+			usersNo += users;
+
+		header.putInt(MAGIC).putInt(VERSION).putInt(statsLength).putInt(chunkSizes.length).putLong(usersNo);
+		long offset = header.capacity();
+		for (int i = 0; i < chunkSizes.length; i++)
+		{
+			header.putLong(offset).putLong(chunkSizes[i]).putInt(chunkUsers[i]);
+			offset += chunkSizes[i];
+		}
+		header.flip();
+
+		while (header.hasRemaining())
+			out.write(header);
+	}
+
+	/**
+	 * Restore users from a binary users backup, memory-mapping it and decoding its chunks in parallel.
+	 * @param usersFile users backup file name.
+	 * @param usersDB users database to restore users into.
+	 * @throws IOException if an I/O error occurs, or if the file is corrupted.
+	 */
+	public static void load(String usersFile, UserRepository usersDB) throws IOException
+	{
+		FileChannel channel = FileChannel.open(Paths.get(usersFile), StandardOpenOption.READ);
+		ExecutorService decoders = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try
+		{
+			/* read header */
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE));
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+				throw new IOException("not a binary users backup");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException("unsupported users backup version: " + version);
+			int statsLength = header.getInt();
+			int chunksNo = header.getInt();
+			long usersNo = header.getLong();
+			if (statsLength < 1 || chunksNo < 0 || usersNo < 0 || usersNo > Integer.MAX_VALUE)
+				throw new IOException("corrupted users backup header");
+
+			usersDB.presize((int) usersNo);
+
+			/* decode every chunk on its own mapping */
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) chunksNo * INDEX_ENTRY_SIZE);
+			ArrayList<Future<Void>> chunks = new ArrayList<Future<Void>>(chunksNo);
+			for (int i = 0; i < chunksNo; i++)
+			{
+				long offset = index.getLong();
+				long size = index.getLong();
+				int users = index.getInt();
+				if (offset < 0 || size < 0 || size > Integer.MAX_VALUE || offset + size > channel.size())
+					throw new IOException("corrupted users backup index");
+
+				MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+				chunks.add(decoders.submit(() -> {
+					decodeChunk(chunk, users, statsLength, usersDB);
+					return null;
+				}));
+			}
+
+			for (Future<Void> chunk : chunks)
+			{
+				try {chunk.get();}
+				catch (ExecutionException e) {throw new IOException("corrupted users backup chunk", e.getCause());}
+				catch (InterruptedException e) {throw new InterruptedIOException();}
+			}
+		}
+		finally
+		{
+			decoders.shutdownNow();
+			channel.close();
+		}
+	}
+
+	/**
+	 * Decode the users records of a chunk.
+	 * @param chunk mapped chunk.
+	 * @param usersNo number of users in the chunk.
+	 * @param statsLength length of the stats arrays.
+	 * @param usersDB users database to restore users into.
+	 */
+	private static void decodeChunk(ByteBuffer chunk, int usersNo, int statsLength, UserRepository usersDB)
+	{
+		for (int i = 0; i < usersNo; i++)
+		{
+			byte[] name = new byte[chunk.getShort()];
+			chunk.get(name);
+			byte[] passwd = new byte[chunk.get() & 0xFF];
+			chunk.get(passwd);
+			short lastWordLength = chunk.getShort();
+			String lastWord = null;
+			if (lastWordLength >= 0)
+			{
+				byte[] word = new byte[lastWordLength];
+				chunk.get(word);
+				lastWord = new String(word, StandardCharsets.UTF_8);
+			}
+			long seq = chunk.getLong();
+			int victories = chunk.getInt();
+			int defeats = chunk.getInt();
+			int lastStreak = chunk.getInt();
+			int maxStreak = chunk.getInt();
+			int lastGuessNo = chunk.getInt();
+			int[] guesses = new int[statsLength];
+			for (int j = 0; j < statsLength; j++)
+				guesses[j] = chunk.getInt();
+
+			UserStats stats = new UserStats(victories, defeats, lastStreak, maxStreak, lastGuessNo, guesses);
+			usersDB.restore(new User(new String(name, StandardCharsets.UTF_8), passwd, lastWord, stats, seq));
+		}
+	}
+
+
+	/**
+	 * Convert a json users backup (as written by previous versions of the server) to the binary format.
+	 * Usage: java UsersSnapshot jsonFile binaryFile maxAttempts
+	 * @param args json users backup file, binary users backup file, maximum attempts for a user to guess secret word.
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length != 3)
+		{
+			System.err.println("Usage: java UsersSnapshot <json users backup> <binary users backup> <WORDLE_MaxAttempts>");
+			System.exit(1);
+		}
+
+		try
+		{
+			/* read json users backup */
+			ArrayList<User> users = new ArrayList<User>();
+			Type userType = new TypeToken<User>(){}.getType();
+			Gson gson = new Gson();
+			JsonReader reader = new JsonReader(new BufferedReader(new FileReader(args[0]), 1 << 16));
+			reader.beginArray();
+			while (reader.hasNext())
+				users.add(gson.fromJson(reader, userType));
+			reader.endArray();
+			reader.close();
+
+			/* write binary users backup, in chunks of CONVERTER_CHUNK users (so that it can be loaded in parallel) */
+			int statsLength = Integer.parseInt(args[2]);
+			int chunksNo = Math.max(1, (users.size() + CONVERTER_CHUNK - 1) / CONVERTER_CHUNK);
+			long[] chunkSizes = new long[chunksNo];
+			int[] chunkUsers = new int[chunksNo];
+			for (int i = 0; i < chunksNo; i++)
+			{
+				int from = i * CONVERTER_CHUNK;
+				int to = Math.min(users.size(), from + CONVERTER_CHUNK);
+				writeChunk(users, from, to, args[1] + ".part" + i, statsLength);
+				chunkSizes[i] = new File(args[1] + ".part" + i).length();
+				chunkUsers[i] = to - from;
+			}
+
+			FileChannel out = FileChannel.open(Paths.get(args[1]), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			writeHeader(out, statsLength, chunkSizes, chunkUsers);
+			for (int i = 0; i < chunksNo; i++)
+			{
+				FileChannel part = FileChannel.open(Paths.get(args[1] + ".part" + i), StandardOpenOption.READ);
+				long position = 0;
+				while (position < chunkSizes[i])
+					position += part.transferTo(position, chunkSizes[i] - position, out);
+				part.close();
+				new File(args[1] + ".part" + i).delete();
+			}
+			out.force(true);
+			out.close();
+
+			System.out.println("Converted " + users.size() + " users.");
+		}
+		catch (IOException | JsonParseException | NumberFormatException e)
+		{
+			System.err.println("ERROR: conversion failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -1,36 +1,145 @@
 import java.util.Random;
-import java.lang.Math;
+import java.util.Arrays;
 import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
 
 
 public class WordsFileHandler
 {
+	/* bits used to pack a single letter */
+	private static final int LETTER_BITS = 5;
+	/* maximum length of a word that can be packed in a long */
+	public static final int MAX_PACKED_LENGTH = Long.SIZE / LETTER_BITS;
+
 	/* pseudo-random number generator */
 	private static final Random generator = new Random(System.currentTimeMillis());
 
-	/* file containing all the words for the game */
-	private static RandomAccessFile wordsFile;
 	/* length of each word (in bytes) */
 	private static int wordLength;
-	/* number of words in wordsFile */
-	private static long wordsQty;
-	/* buffer for reading a word from wordsFile */
-	private static byte[] buffer;
+	/* heap mode - all the words of wordsFile, packed (see pack) and sorted */
+	private static long[] words;
+	/* mmap mode - memory-mapped wordsFile (null in heap mode) */
+	private static MappedWords mappedWords;
 
 	/**
-	 * @param wordsFile file containing all the words for the game.
+	 * Prepare wordsFile for lookups.
+	 * @param wordsFile file containing all the words for the game, one per line, sorted.
 	 * @param wordLength length of each word (in bytes).
-	 * @throws IOException if an I/O error occurs.
+	 * @param mode "heap" to load all the words in memory, "mmap" to memory-map wordsFile and search it in place.
+	 * @throws IOException if an I/O error occurs, or if wordsFile contains illegal words.
 	 */
-	public WordsFileHandler(RandomAccessFile wordsFile, int wordLength) throws IOException
+	public WordsFileHandler(RandomAccessFile wordsFile, int wordLength, String mode) throws IOException
 	{
-		this.wordsFile = wordsFile;
 		this.wordLength = wordLength;
 
-		buffer = new byte[wordLength];
-		wordsQty = wordsFile.length() / (wordLength+1); // beware of \n
+		if (mode.equals("mmap"))
+			mappedWords = new MappedWords(wordsFile.getChannel(), wordLength);
+		else
+			words = load(wordsFile);
+	}
+
+	/**
+	 * Load and pack all the words of wordsFile.
+	 * @param wordsFile file containing all the words for the game, one per line.
+	 * @return all the words of wordsFile, packed and sorted.
+	 * @throws IOException if an I/O error occurs, or if wordsFile contains illegal words.
+	 */
+	private static long[] load(RandomAccessFile wordsFile) throws IOException
+	{
+		if (wordLength > MAX_PACKED_LENGTH)
+			throw new IOException("words longer than " + MAX_PACKED_LENGTH + " letters cannot be indexed");
+
+		long wordsQty = wordsFile.length() / (wordLength+1); // beware of \n
+		if (wordsQty == 0 || wordsQty > Integer.MAX_VALUE)
+			throw new IOException("unsupported number of words: " + wordsQty);
+
+		/* read and pack all words, sequentially */
+		long[] packedWords = new long[(int) wordsQty];
+		byte[] line = new byte[wordLength+1];
+		boolean sorted = true;
+		wordsFile.seek(0);
+		InputStream in = new BufferedInputStream(Channels.newInputStream(wordsFile.getChannel()), 1 << 16);
+		for (int i = 0; i < packedWords.length; i++)
+		{
+			if (in.readNBytes(line, 0, line.length) != line.length)
+				throw new IOException("truncated words file");
+
+			packedWords[i] = pack(line);
+			if (packedWords[i] < 0)
+				throw new IOException("illegal word at line " + (i+1));
+			if (i > 0 && packedWords[i] < packedWords[i-1])
+				sorted = false;
+		}
+
+		/* words file is expected to be sorted already */
+		if (!sorted)
+			Arrays.sort(packedWords);
+
+		return packedWords;
+	}
+
+	/**
+	 * Pack a word in a long, 5 bits per letter ('a' is 1, 'z' is 26), first letter in the most significant bits.
+	 * Packed words of the same length compare like the words themselves.
+	 * @param word the word to pack.
+	 * @return the packed word, or -1 if word is not made of exactly wordLength lowercase letters (or is too long to be packed).
+	 */
+	public static long pack(CharSequence word)
+	{
+		if (word.length() != wordLength || wordLength > MAX_PACKED_LENGTH)
+			return -1;
+
+		long packed = 0;
+		char c;
+		for (int i = 0; i < wordLength; i++)
+		{
+			c = word.charAt(i);
+			if (c < 'a' || c > 'z')
+				return -1;
+			packed = (packed << LETTER_BITS) | (c - 'a' + 1);
+		}
+		return packed;
+	}
+
+	/**
+	 * Pack a word read from wordsFile (see pack).
+	 * @param line raw word, followed by \n.
+	 * @return the packed word, or -1 if line does not hold a legal word.
+	 */
+	private static long pack(byte[] line)
+	{
+		if (line[wordLength] != '\n')
+			return -1;
 
+		long packed = 0;
+		byte c;
+		for (int i = 0; i < wordLength; i++)
+		{
+			c = line[i];
+			if (c < 'a' || c > 'z')
+				return -1;
+			packed = (packed << LETTER_BITS) | (c - 'a' + 1);
+		}
+		return packed;
+	}
+
+	/**
+	 * Unpack a packed word (see pack).
+	 * @param packed the packed word.
+	 * @return the word as a String.
+	 */
+	public static String unpack(long packed)
+	{
+		char[] word = new char[wordLength];
+		for (int i = wordLength-1; i >= 0; i--)
+		{
+			word[i] = (char) ('a' - 1 + (packed & 0x1F));
+			packed >>>= LETTER_BITS;
+		}
+		return new String(word);
 	}
 
 	/**
@@ -40,43 +149,24 @@ public class WordsFileHandler
 	 */
 	public static String getRandomWord() throws IOException
 	{
-		/* move randomly in the file */
-		wordsFile.seek((long)Math.floor(generator.nextDouble() * wordsQty) * (wordLength+1)); // beware of \n
-		/* read a single word */
-		wordsFile.read(buffer);
+		if (mappedWords != null)
+			return mappedWords.get((long) Math.floor(generator.nextDouble() * mappedWords.size()));
 
-		return new String(buffer); // \n removed
+		return unpack(words[generator.nextInt(words.length)]);
 	}
 
 	/**
-	 * Do a binary search on wordsFile to verify if it contains the specified word.
+	 * Verify if wordsFile contains the specified word (binary search, no allocations).
 	 * @param keyWord the word to check for existance in wordsFile.
 	 * @return true if keyWord is is wordsFile, false otherwise.
 	 * @throws IOException if an I/O error occurs.
 	 */
 	public static boolean exists(String keyWord) throws IOException
 	{
-		long lower = 0;
-		long upper = wordsQty-1;
-		long mid;
-		String word;
-		int comparison;
+		if (mappedWords != null)
+			return mappedWords.contains(keyWord);
 
-		while (lower <= upper)
-		{
-			mid = (lower + upper) / 2;
-			wordsFile.seek(mid * (wordLength+1));
-			wordsFile.read(buffer);
-			word = new String(buffer);
-
-			comparison = keyWord.compareTo(word);
-			if (comparison == 0)
-				return true;
-			if (comparison < 0)
-				upper = mid - 1;
-			else
-				lower = mid + 1;
-		}
-		return false;
+		long packed = pack(keyWord);
+		return packed >= 0 && Arrays.binarySearch(words, packed) >= 0;
 	}
-}
\ No newline at end of file
+}